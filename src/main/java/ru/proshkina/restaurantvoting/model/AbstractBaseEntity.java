@@ -1,5 +1,8 @@
 package ru.proshkina.restaurantvoting.model;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import ru.proshkina.restaurantvoting.HasId;
 
 import javax.persistence.*;
@@ -9,10 +12,17 @@ import javax.persistence.*;
 @Access(AccessType.FIELD)
 public abstract class AbstractBaseEntity implements HasId {
     public static final int START_SEQ = 100000;
+    public static final int ID_BLOCK_SIZE = 50;
 
+    //  sequence per entity (user_seq, restaurant_seq, ...), every value reserves a block of ids: initDB_hsql.sql
     @Id
-    @SequenceGenerator(name = "global_seq", sequenceName = "global_seq", allocationSize = 1, initialValue = START_SEQ)
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "global_seq")
+    @GenericGenerator(name = "entity_seq", strategy = "enhanced-sequence", parameters = {
+            @Parameter(name = SequenceStyleGenerator.CONFIG_PREFER_SEQUENCE_PER_ENTITY, value = "true"),
+            @Parameter(name = SequenceStyleGenerator.CONFIG_SEQUENCE_PER_ENTITY_SUFFIX, value = "_seq"),
+            @Parameter(name = SequenceStyleGenerator.INITIAL_PARAM, value = "" + START_SEQ),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + ID_BLOCK_SIZE),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "entity_seq")
     protected Integer id;
 
     protected AbstractBaseEntity() {
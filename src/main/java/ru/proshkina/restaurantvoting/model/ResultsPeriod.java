@@ -0,0 +1,22 @@
+package ru.proshkina.restaurantvoting.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+public enum ResultsPeriod {
+    WEEK,
+    MONTH,
+    YEAR;
+
+    public LocalDate startOf(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            default:
+                return date.withDayOfYear(1);
+        }
+    }
+}
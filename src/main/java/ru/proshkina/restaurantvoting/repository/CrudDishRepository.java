@@ -4,13 +4,17 @@ import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 import ru.proshkina.restaurantvoting.model.Dish;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Transactional(readOnly = true)
 public interface CrudDishRepository extends JpaRepository<Dish, Integer> {
@@ -20,6 +24,22 @@ public interface CrudDishRepository extends JpaRepository<Dish, Integer> {
     @Query("DELETE FROM Dish d WHERE d.id=:id AND d.restaurant.id=:restaurantId")
     int delete(@Param("id") int id, @Param("restaurantId") int restaurantId);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE Dish d SET d.name=:name, d.priceInCents=:price " +
+            "WHERE d.id=:id AND d.restaurant.id=:restaurantId AND d.date=:date")
+    int updateOnDate(@Param("id") int id, @Param("restaurantId") int restaurantId, @Param("date") LocalDate date,
+                     @Param("name") String name, @Param("price") int priceInCents);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Dish d SET d.name=:name, d.date=:date, d.priceInCents=:price WHERE d.id=:id AND d.restaurant.id=:restaurantId")
+    int update(@Param("id") int id, @Param("restaurantId") int restaurantId, @Param("date") LocalDate date,
+               @Param("name") String name, @Param("price") int priceInCents);
+
+    @Query("SELECT d.date FROM Dish d WHERE d.id=:id AND d.restaurant.id=:restaurantId")
+    LocalDate getDate(@Param("id") int id, @Param("restaurantId") int restaurantId);
+
     @Override
     @Transactional
     Dish save(Dish dish);
@@ -36,4 +56,10 @@ public interface CrudDishRepository extends JpaRepository<Dish, Integer> {
     List<Dish> findAllByRestaurant_IdOrderByDateAscRestaurantIdAscPriceInCentsAsc(@Param("restaurantId") int restaurantId);
 
     List<Dish> findAllByDateAndRestaurant_IdOrderByRestaurantIdAscPriceInCentsAsc(@Param("date") LocalDate date, @Param("restaurantId") int restaurantId);
+
+    // to be consumed inside a transaction, rows are fetched while the stream is read
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.proshkina.restaurantvoting.to.PriceStatsTo(d.restaurant.id, d.date, COUNT(d), MIN(d.priceInCents), AVG(d.priceInCents), MAX(d.priceInCents)) " +
+            "FROM Dish d WHERE d.date BETWEEN :from AND :to GROUP BY d.restaurant.id, d.date ORDER BY d.date, d.restaurant.id")
+    Stream<PriceStatsTo> getPriceStats(@Param("from") LocalDate from, @Param("to") LocalDate to);
 }
@@ -31,6 +31,14 @@ public interface CrudRestaurantRepository extends JpaRepository<Restaurant, Inte
     @Query("DELETE FROM Restaurant r WHERE r.id=:id")
     int delete(@Param("id") int id);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE Restaurant r SET r.name=:name WHERE r.id=:id")
+    int update(@Param("id") int id, @Param("name") String name);
+
+    @Query("SELECT r.id FROM Restaurant r")
+    List<Integer> getAllIds();
+
     @EntityGraph(attributePaths = {"dishes"})
     List<Restaurant> findAllByDishes_DateOrderById(@Param("date") LocalDate date);
 }
@@ -14,6 +14,11 @@ import java.util.Optional;
 
 @Transactional(readOnly = true)
 public interface CrudVoteRepository extends JpaRepository<Vote, Integer> {
+    //  run by the batch writer, the journal and the importer; the id is used only for a new row, it comes from IdBlocks
+    String UPSERT = "MERGE INTO votes v USING (VALUES (CAST(:id AS INTEGER), CAST(:date AS DATE), CAST(:time AS TIME), :userId, :restaurantId)) " +
+            "AS n(id, vote_date, vote_time, user_id, restaurant_id) ON v.date=n.vote_date AND v.user_id=n.user_id " +
+            "WHEN MATCHED THEN UPDATE SET v.time=n.vote_time, v.restaurant_id=n.restaurant_id " +
+            "WHEN NOT MATCHED THEN INSERT (id, date, time, user_id, restaurant_id) VALUES (n.id, n.vote_date, n.vote_time, n.user_id, n.restaurant_id)";
 
     @Override
     @Transactional
@@ -37,6 +42,12 @@ public interface CrudVoteRepository extends JpaRepository<Vote, Integer> {
     @Query("DELETE FROM Vote WHERE id=:id AND user.id=:userId")
     int delete(@Param("id") int id, @Param("userId") int userId);
 
+    @Query("SELECT v.user.id, v.restaurant.id, v.time, v.id FROM Vote v WHERE v.date=:date")
+    List<Object[]> getBallotsByDate(@Param("date") LocalDate date);
+
+    @Query("SELECT v.restaurant.id, COUNT(v) FROM Vote v WHERE v.date=:date GROUP BY v.restaurant.id")
+    List<Object[]> countByRestaurantForDate(@Param("date") LocalDate date);
+
     @Override
     Optional<Vote> findById(Integer id);
 
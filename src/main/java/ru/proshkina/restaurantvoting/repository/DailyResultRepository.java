@@ -0,0 +1,189 @@
+package ru.proshkina.restaurantvoting.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.proshkina.restaurantvoting.model.ResultsPeriod;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.RestaurantTo;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Final vote results of closed days, one row per restaurant with a menu for the date,
+ * and their weekly and monthly rollups, updated by the difference whenever a day is sealed again.
+ * Sealed days are listed in sealed_days, days without any menu included.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class DailyResultRepository {
+    private static final String SELECT = "SELECT r.id, r.name, d.votes_count FROM daily_results d " +
+            "JOIN restaurants r ON r.id=d.restaurant_id WHERE d.date=:date ORDER BY d.votes_count DESC, r.id";
+    private static final String SELECT_ROWS = "SELECT restaurant_id, votes_count, winner FROM daily_results WHERE date=:date";
+    private static final String INSERT = "INSERT INTO daily_results (date, restaurant_id, votes_count, winner) " +
+            "VALUES (:date, :restaurantId, :votesCount, :winner)";
+    private static final String DELETE = "DELETE FROM daily_results WHERE date=:date";
+    private static final String SEAL = "MERGE INTO sealed_days s USING (VALUES (CAST(:date AS DATE))) AS n(date) ON s.date=n.date " +
+            "WHEN NOT MATCHED THEN INSERT (date) VALUES (n.date)";
+    private static final String UNSEAL = "DELETE FROM sealed_days WHERE date=:date";
+    private static final String COUNT_SEALED = "SELECT COUNT(*) FROM sealed_days WHERE date=:date";
+    private static final String LAST_SEALED = "SELECT MAX(date) FROM sealed_days";
+    // one statement: days of the same period sealed at once can't both insert the row
+    private static final String ROLLUP_MERGE = "MERGE INTO results_rollups u USING (VALUES (CAST(:granularity AS VARCHAR(5)), " +
+            "CAST(:start AS DATE), CAST(:restaurantId AS INTEGER), CAST(:votesCount AS INTEGER), CAST(:wins AS INTEGER))) " +
+            "AS n(granularity, start_date, restaurant_id, votes_count, wins) " +
+            "ON u.granularity=n.granularity AND u.start_date=n.start_date AND u.restaurant_id=n.restaurant_id " +
+            "WHEN MATCHED THEN UPDATE SET u.votes_count=u.votes_count+n.votes_count, u.wins=u.wins+n.wins " +
+            "WHEN NOT MATCHED THEN INSERT (granularity, start_date, restaurant_id, votes_count, wins) " +
+            "VALUES (n.granularity, n.start_date, n.restaurant_id, n.votes_count, n.wins)";
+    private static final String SELECT_ROLLUPS = "SELECT r.id, r.name, u.start_date, u.votes_count, u.wins FROM results_rollups u " +
+            "JOIN restaurants r ON r.id=u.restaurant_id WHERE u.granularity=:granularity AND u.start_date BETWEEN :from AND :to " +
+            "ORDER BY u.start_date, u.votes_count DESC, r.id";
+    private static final String SELECT_YEARS = "SELECT r.id, r.name, YEAR(u.start_date), SUM(u.votes_count), SUM(u.wins) FROM results_rollups u " +
+            "JOIN restaurants r ON r.id=u.restaurant_id WHERE u.granularity='MONTH' AND u.start_date BETWEEN :from AND :to " +
+            "GROUP BY r.id, r.name, YEAR(u.start_date) ORDER BY 3, 4 DESC, r.id";
+    private static final String SELECT_TOTALS = "SELECT r.id, r.name, SUM(t.votes_count), SUM(t.wins) FROM (" +
+            "SELECT restaurant_id, votes_count, CASE WHEN winner THEN 1 ELSE 0 END AS wins FROM daily_results WHERE date IN (:days) " +
+            "UNION ALL SELECT restaurant_id, votes_count, wins FROM results_rollups WHERE granularity='WEEK' AND start_date IN (:weeks) " +
+            "UNION ALL SELECT restaurant_id, votes_count, wins FROM results_rollups WHERE granularity='MONTH' AND start_date IN (:months)" +
+            ") t JOIN restaurants r ON r.id=t.restaurant_id GROUP BY r.id, r.name ORDER BY 4 DESC, 3 DESC, r.id";
+
+    private static final ResultsPeriod[] ROLLUP_PERIODS = {ResultsPeriod.WEEK, ResultsPeriod.MONTH};
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public DailyResultRepository(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    /**
+     * @return results of the date, empty if it is not sealed
+     */
+    public List<RestaurantTo> getAll(LocalDate date) {
+        return jdbcTemplate.query(SELECT, new MapSqlParameterSource("date", Date.valueOf(date)),
+                (rs, rowNum) -> new RestaurantTo(rs.getInt(1), rs.getString(2), rs.getInt(3), date));
+    }
+
+    /**
+     * The restaurant with the most votes wins the day, the one with the lowest id on a tie; nobody wins a day without votes.
+     */
+    @Transactional
+    public void save(LocalDate date, List<RestaurantTo> results) {
+        delete(date);
+        RestaurantTo winner = null;
+        for (RestaurantTo result : results) {
+            if (result.getVotesCount() > 0 && (winner == null || result.getVotesCount() > winner.getVotesCount() ||
+                    result.getVotesCount() == winner.getVotesCount() && result.getId() < winner.getId())) {
+                winner = result;
+            }
+        }
+        List<DayResult> rows = new ArrayList<>();
+        for (RestaurantTo result : results) {
+            rows.add(new DayResult(result.getId(), result.getVotesCount(), result == winner));
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows.stream()
+                .map(row -> new MapSqlParameterSource()
+                        .addValue("date", Date.valueOf(date))
+                        .addValue("restaurantId", row.restaurantId)
+                        .addValue("votesCount", row.votesCount)
+                        .addValue("winner", row.winner))
+                .toArray(SqlParameterSource[]::new));
+        rollUp(date, rows, 1);
+        jdbcTemplate.update(SEAL, new MapSqlParameterSource("date", Date.valueOf(date)));
+    }
+
+    public boolean isSealed(LocalDate date) {
+        return jdbcTemplate.queryForObject(COUNT_SEALED, new MapSqlParameterSource("date", Date.valueOf(date)), Integer.class) > 0;
+    }
+
+    /**
+     * @return the latest sealed day, null if none is sealed yet
+     */
+    public LocalDate getLastSealed() {
+        Date last = jdbcTemplate.queryForObject(LAST_SEALED, new MapSqlParameterSource(), Date.class);
+        return last == null ? null : last.toLocalDate();
+    }
+
+    /**
+     * Unseals the date and takes its results out of the rollups.
+     */
+    @Transactional
+    public int delete(LocalDate date) {
+        MapSqlParameterSource params = new MapSqlParameterSource("date", Date.valueOf(date));
+        List<DayResult> rows = jdbcTemplate.query(SELECT_ROWS, params,
+                (rs, rowNum) -> new DayResult(rs.getInt(1), rs.getInt(2), rs.getBoolean(3)));
+        rollUp(date, rows, -1);
+        jdbcTemplate.update(UNSEAL, params);
+        return jdbcTemplate.update(DELETE, params);
+    }
+
+    /**
+     * @return votes and wins of every restaurant per period starting between the dates, years are summed up from months
+     */
+    public List<PopularityTo> getRollups(ResultsPeriod period, LocalDate from, LocalDate to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("granularity", period.name())
+                .addValue("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+        if (period == ResultsPeriod.YEAR) {
+            return jdbcTemplate.query(SELECT_YEARS, params, (rs, rowNum) ->
+                    new PopularityTo(rs.getInt(1), rs.getString(2), LocalDate.of(rs.getInt(3), 1, 1), rs.getInt(4), rs.getInt(5)));
+        }
+        return jdbcTemplate.query(SELECT_ROLLUPS, params, (rs, rowNum) ->
+                new PopularityTo(rs.getInt(1), rs.getString(2), rs.getDate(3).toLocalDate(), rs.getInt(4), rs.getInt(5)));
+    }
+
+    /**
+     * @return votes and wins of every restaurant summed over the sealed days, whole weeks and whole months given
+     */
+    public List<PopularityTo> getTotals(LocalDate start, List<LocalDate> days, List<LocalDate> weeks, List<LocalDate> months) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("days", asDates(days))
+                .addValue("weeks", asDates(weeks))
+                .addValue("months", asDates(months));
+        return jdbcTemplate.query(SELECT_TOTALS, params, (rs, rowNum) ->
+                new PopularityTo(rs.getInt(1), rs.getString(2), start, rs.getInt(3), rs.getInt(4)));
+    }
+
+    private void rollUp(LocalDate date, List<DayResult> rows, int sign) {
+        List<SqlParameterSource> params = new ArrayList<>();
+        for (ResultsPeriod period : ROLLUP_PERIODS) {
+            for (DayResult row : rows) {
+                params.add(new MapSqlParameterSource()
+                        .addValue("granularity", period.name())
+                        .addValue("start", Date.valueOf(period.startOf(date)))
+                        .addValue("restaurantId", row.restaurantId)
+                        .addValue("votesCount", sign * row.votesCount)
+                        .addValue("wins", row.winner ? sign : 0));
+            }
+        }
+        if (!params.isEmpty()) {
+            jdbcTemplate.batchUpdate(ROLLUP_MERGE, params.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    // an empty IN list is not valid SQL, IN (NULL) matches nothing
+    private static List<Date> asDates(List<LocalDate> dates) {
+        return dates.isEmpty() ? Collections.singletonList(null) : dates.stream().map(Date::valueOf).collect(Collectors.toList());
+    }
+
+    private static class DayResult {
+        private final int restaurantId;
+        private final int votesCount;
+        private final boolean winner;
+
+        private DayResult(int restaurantId, int votesCount, boolean winner) {
+            this.restaurantId = restaurantId;
+            this.votesCount = votesCount;
+            this.winner = winner;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ru.proshkina.restaurantvoting.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ru.proshkina.restaurantvoting.model.AbstractBaseEntity.ID_BLOCK_SIZE;
+
+/**
+ * Ids for rows inserted with native SQL, taken from the entity sequences the same way Hibernate does (pooled-lo):
+ * one sequence value reserves the block of {@link ru.proshkina.restaurantvoting.model.AbstractBaseEntity#ID_BLOCK_SIZE} ids starting with it.
+ * The column default would take a whole block for every row.
+ */
+@Repository
+public class IdBlocks {
+    public static final String VOTE_SEQ = "vote_seq";
+    public static final String DISH_SEQ = "dish_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    public IdBlocks(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public int next(String sequence) {
+        return blocks.computeIfAbsent(sequence, Block::new).next();
+    }
+
+    /**
+     * Forgets the blocks taken, e.g. after the sequences are restarted.
+     */
+    public void clear() {
+        blocks.clear();
+    }
+
+    private class Block {
+        private final String sequence;
+        private int next;
+        private int end;
+
+        private Block(String sequence) {
+            this.sequence = sequence;
+        }
+
+        private synchronized int next() {
+            if (next == end) {
+                next = jdbcTemplate.queryForObject("CALL NEXT VALUE FOR " + sequence, Integer.class);
+                end = next + ID_BLOCK_SIZE;
+            }
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.proshkina.restaurantvoting.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.proshkina.restaurantvoting.model.Dish;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Menus of a restaurant for a date written as a whole: dishes are matched by name,
+ * and the differences with the saved menu are applied as JDBC batches.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class MenuRepository {
+    private static final String SELECT = "SELECT id, name, price FROM dishes WHERE restaurant_id=:restaurantId AND date=:date";
+    // ids are taken from IdBlocks: the column default would take a whole block of dish_seq for every row
+    private static final String INSERT = "INSERT INTO dishes (id, date, name, price, restaurant_id) VALUES (:id, :date, :name, :price, :restaurantId)";
+    private static final String UPDATE = "UPDATE dishes SET price=:price WHERE id=:id";
+    private static final String DELETE = "DELETE FROM dishes WHERE id=:id";
+    // dishes already on the target menu are kept, HSQLDB has no ON CONFLICT DO NOTHING
+    private static final String SELECT_COPIED_ALL = "SELECT d.name, d.price, d.restaurant_id FROM dishes d WHERE d.date=:from " +
+            "AND NOT EXISTS (SELECT 1 FROM dishes t WHERE t.restaurant_id=d.restaurant_id AND t.date=:to AND t.name=d.name)";
+    private static final String SELECT_COPIED = SELECT_COPIED_ALL + " AND d.restaurant_id=:restaurantId";
+    private static final String SELECT_RESTAURANTS = "SELECT DISTINCT restaurant_id FROM dishes WHERE date=:date";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final IdBlocks idBlocks;
+
+    public MenuRepository(DataSource dataSource, IdBlocks idBlocks) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.idBlocks = idBlocks;
+    }
+
+    /**
+     * @param dishes with names unique within the menu
+     * @return whether the saved menu changed
+     */
+    @Transactional
+    public boolean replace(int restaurantId, LocalDate date, List<Dish> dishes) {
+        MapSqlParameterSource menu = new MapSqlParameterSource()
+                .addValue("restaurantId", restaurantId)
+                .addValue("date", Date.valueOf(date));
+        Map<String, Dish> saved = new HashMap<>();
+        jdbcTemplate.query(SELECT, menu, rs -> {
+            saved.put(rs.getString(2), new Dish(rs.getInt(1), rs.getString(2), date, rs.getInt(3)));
+        });
+
+        List<SqlParameterSource> inserts = new ArrayList<>();
+        List<SqlParameterSource> updates = new ArrayList<>();
+        for (Dish dish : dishes) {
+            Dish previous = saved.remove(dish.getName());
+            if (previous == null) {
+                inserts.add(new MapSqlParameterSource()
+                        .addValue("id", idBlocks.next(IdBlocks.DISH_SEQ))
+                        .addValue("date", Date.valueOf(date))
+                        .addValue("name", dish.getName())
+                        .addValue("price", dish.getPriceInCents())
+                        .addValue("restaurantId", restaurantId));
+            } else if (!previous.getPriceInCents().equals(dish.getPriceInCents())) {
+                updates.add(new MapSqlParameterSource()
+                        .addValue("id", previous.getId())
+                        .addValue("price", dish.getPriceInCents()));
+            }
+        }
+        List<SqlParameterSource> deletes = new ArrayList<>();
+        saved.values().forEach(dish -> deletes.add(new MapSqlParameterSource("id", dish.getId())));
+
+        batchUpdate(DELETE, deletes);
+        batchUpdate(UPDATE, updates);
+        batchUpdate(INSERT, inserts);
+        return !(deletes.isEmpty() && updates.isEmpty() && inserts.isEmpty());
+    }
+
+    /**
+     * Copies the menus of the date to every target date: the dishes missing on each target menu are selected
+     * and inserted with ids from {@link IdBlocks} in one batch. Dishes of the same name already on a target menu are left as they are.
+     *
+     * @param restaurantId restaurant whose menu is copied, null for the menus of all restaurants
+     * @return number of dishes copied to each of the target dates
+     */
+    @Transactional
+    public int[] copy(Integer restaurantId, LocalDate from, List<LocalDate> to) {
+        List<SqlParameterSource> inserts = new ArrayList<>();
+        int[] copied = new int[to.size()];
+        for (int i = 0; i < copied.length; i++) {
+            Date date = Date.valueOf(to.get(i));
+            int before = inserts.size();
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("restaurantId", restaurantId)
+                    .addValue("from", Date.valueOf(from))
+                    .addValue("to", date);
+            jdbcTemplate.query(restaurantId == null ? SELECT_COPIED_ALL : SELECT_COPIED, params, rs -> {
+                inserts.add(new MapSqlParameterSource()
+                        .addValue("id", idBlocks.next(IdBlocks.DISH_SEQ))
+                        .addValue("date", date)
+                        .addValue("name", rs.getString(1))
+                        .addValue("price", rs.getInt(2))
+                        .addValue("restaurantId", rs.getInt(3)));
+            });
+            copied[i] = inserts.size() - before;
+        }
+        batchUpdate(INSERT, inserts);
+        return copied;
+    }
+
+    /**
+     * @return ids of the restaurants with a menu for the date
+     */
+    public List<Integer> getRestaurantIds(LocalDate date) {
+        return jdbcTemplate.queryForList(SELECT_RESTAURANTS, new MapSqlParameterSource("date", Date.valueOf(date)), Integer.class);
+    }
+
+    private void batchUpdate(String sql, List<SqlParameterSource> params) {
+        if (!params.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, params.toArray(new SqlParameterSource[0]));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.proshkina.restaurantvoting.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ru.proshkina.restaurantvoting.model.AbstractBaseEntity.ID_BLOCK_SIZE;
+
+/**
+ * Moves a database created with the shared global_seq to the per-table sequences of initDB_hsql.sql keeping every id:
+ * each sequence starts after the largest id of its table. Runs on startup and does nothing once the sequences exist,
+ * e.g. for a database created by initDB_hsql.sql.
+ * <p>
+ * HSQLDB cannot bind an existing column to another sequence, so the migrated id columns lose their generator instead;
+ * every insert supplies its id, taken by Hibernate or by {@link IdBlocks}. global_seq is left unused:
+ * HSQLDB still counts the columns as its dependents and would drop the tables with it.
+ */
+@Repository
+public class SequenceMigration {
+    private static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES.put("users", "user_seq");
+        SEQUENCES.put("restaurants", "restaurant_seq");
+        SEQUENCES.put("votes", IdBlocks.VOTE_SEQ);
+        SEQUENCES.put("dishes", IdBlocks.DISH_SEQ);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SequenceMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!exists("GLOBAL_SEQ")) {
+            return;
+        }
+        SEQUENCES.forEach((table, sequence) -> {
+            if (exists(sequence.toUpperCase())) {
+                return;
+            }
+            int next = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 99999) + 1 FROM " + table, Integer.class);
+            jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP GENERATED");
+            jdbcTemplate.execute("CREATE SEQUENCE " + sequence + " AS INTEGER START WITH " + next + " INCREMENT BY " + ID_BLOCK_SIZE);
+            log.info("ids of {} are taken from {} starting with {}", table, sequence, next);
+        });
+    }
+
+    private boolean exists(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME=?",
+                Integer.class, sequence) > 0;
+    }
+}
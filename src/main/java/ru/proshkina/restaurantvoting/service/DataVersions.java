@@ -0,0 +1,99 @@
+package ru.proshkina.restaurantvoting.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Versions of the aggregates for conditional requests: the restaurants, all dishes and the dishes of every restaurant,
+ * and the vote results. Versions start from the start time of the application, so they never repeat after a restart.
+ */
+@Component
+public class DataVersions {
+    public static final String RESTAURANTS = "restaurants";
+    public static final String DISHES = "dishes";
+    public static final String RESULTS = "results";
+
+    private final long started = System.currentTimeMillis();
+    private final ConcurrentMap<String, Version> versions = new ConcurrentHashMap<>();
+
+    public Version get(String aggregate) {
+        return versions.getOrDefault(aggregate, new Version(started, started));
+    }
+
+    public Version get(String aggregate, int id) {
+        return get(aggregate + ':' + id);
+    }
+
+    /**
+     * Inside a transaction the version changes after the commit: a version read before the data is never newer than the data.
+     */
+    public void changed(String aggregate) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    increment(aggregate);
+                }
+            });
+        } else {
+            increment(aggregate);
+        }
+    }
+
+    public void changed(String aggregate, int id) {
+        changed(aggregate);
+        changed(aggregate + ':' + id);
+    }
+
+    private void increment(String aggregate) {
+        long now = System.currentTimeMillis();
+        versions.merge(aggregate, new Version(started + 1, now),
+                (previous, ignored) -> new Version(previous.number + 1, Math.max(now, previous.lastModified)));
+    }
+
+    public static class Version {
+        private final long number;
+        private final String tag;
+        private final long lastModified;
+
+        private Version(long number, long lastModified) {
+            this(number, Long.toString(number), lastModified);
+        }
+
+        private Version(long number, String tag, long lastModified) {
+            this.number = number;
+            this.tag = tag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return version of data made of both
+         */
+        public Version and(Version other) {
+            return new Version(-1, tag + '.' + other.tag,
+                    lastModified < 0 || other.lastModified < 0 ? -1 : Math.max(lastModified, other.lastModified));
+        }
+
+        /**
+         * @return version of data also depending on a counter with unknown modification time
+         */
+        public Version and(long counter) {
+            return new Version(-1, tag + '.' + counter, -1);
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * @return milliseconds, -1 if unknown
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.proshkina.restaurantvoting.service.analytics;
+
+import ru.proshkina.restaurantvoting.model.ResultsPeriod;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Popularity of restaurants over sealed days only, answered from the rollups of the daily results,
+ * and statistics of menu prices, aggregated by the database.
+ * <p>
+ * A closed day is left out until its results are sealed: by VotingDayScheduler after the deadline,
+ * by an admin request or when its votes change.
+ */
+public interface AnalyticsService {
+
+    List<PopularityTo> getPopularity(ResultsPeriod period, LocalDate from, LocalDate to);
+
+    List<PopularityTo> getTotals(LocalDate from, LocalDate to);
+
+    /**
+     * Hands the min, average and max menu price of every restaurant and date to the consumer one by one, by date and restaurant.
+     */
+    void streamPriceStats(LocalDate from, LocalDate to, Consumer<PriceStatsTo> consumer);
+}
@@ -0,0 +1,80 @@
+package ru.proshkina.restaurantvoting.service.analytics;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+import ru.proshkina.restaurantvoting.model.ResultsPeriod;
+import ru.proshkina.restaurantvoting.repository.CrudDishRepository;
+import ru.proshkina.restaurantvoting.repository.DailyResultRepository;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Service
+public class AnalyticsServiceImpl implements AnalyticsService {
+
+    private final DailyResultRepository dailyResultRepository;
+    private final CrudDishRepository dishRepository;
+
+    public AnalyticsServiceImpl(DailyResultRepository dailyResultRepository, CrudDishRepository dishRepository) {
+        this.dailyResultRepository = dailyResultRepository;
+        this.dishRepository = dishRepository;
+    }
+
+    @Override
+    public List<PopularityTo> getPopularity(ResultsPeriod period, LocalDate from, LocalDate to) {
+        Assert.notNull(period, "period must not be null");
+        checkRange(from, to);
+        return dailyResultRepository.getRollups(period, period.startOf(from), to);
+    }
+
+    /**
+     * The range is covered by whole months, then whole weeks, and the days left, so a year takes about twelve rows per restaurant.
+     */
+    @Override
+    public List<PopularityTo> getTotals(LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        List<LocalDate> days = new ArrayList<>();
+        List<LocalDate> weeks = new ArrayList<>();
+        List<LocalDate> months = new ArrayList<>();
+        LocalDate date = from;
+        while (!date.isAfter(to)) {
+            if (date.getDayOfMonth() == 1 && !date.with(TemporalAdjusters.lastDayOfMonth()).isAfter(to)) {
+                months.add(date);
+                date = date.plusMonths(1);
+            } else if (date.getDayOfWeek() == DayOfWeek.MONDAY && !date.plusDays(6).isAfter(to)) {
+                weeks.add(date);
+                date = date.plusWeeks(1);
+            } else {
+                days.add(date);
+                date = date.plusDays(1);
+            }
+        }
+        return dailyResultRepository.getTotals(from, days, weeks, months);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public void streamPriceStats(LocalDate from, LocalDate to, Consumer<PriceStatsTo> consumer) {
+        checkRange(from, to);
+        try (Stream<PriceStatsTo> stats = dishRepository.getPriceStats(from, to)) {
+            stats.forEach(consumer);
+        }
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        Assert.notNull(from, "from must not be null");
+        Assert.notNull(to, "to must not be null");
+        if (from.isAfter(to)) {
+            throw new IllegalRequestDataException("from " + from + " is after to " + to);
+        }
+    }
+}
@@ -15,6 +15,17 @@ public interface DishService {
 
     void update(Dish dish, int restaurantId);
 
+    /**
+     * Replaces the menu of the restaurant for the date with the dishes, matched to the saved ones by name.
+     */
+    void replaceMenu(int restaurantId, LocalDate date, List<Dish> dishes);
+
+    /**
+     * Copies the menu of the restaurant, or the menus of all restaurants if it is null, from the date to the target dates.
+     * Dishes already on a target menu under the same name are kept.
+     */
+    void copyMenu(Integer restaurantId, LocalDate from, List<LocalDate> to);
+
     List<Dish> getAll();
 
     List<Dish> getAllForDate(LocalDate date);
@@ -22,4 +33,10 @@ public interface DishService {
     List<Dish> getAllByRestaurant(int restaurantId);
 
     List<Dish> getAllByRestaurantAndDate(int restaurantId, LocalDate date);
+
+    /**
+     * @param query words every dish name must have a word starting with, all dishes of the date if blank
+     * @return dishes of the date with their restaurants, the cheapest first
+     */
+    List<Dish> search(LocalDate date, String query, Integer minPriceInCents, Integer maxPriceInCents);
 }
@@ -1,39 +1,56 @@
 package ru.proshkina.restaurantvoting.service.dish;
 
 
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import ru.proshkina.restaurantvoting.model.Dish;
 import ru.proshkina.restaurantvoting.repository.CrudDishRepository;
 import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
+import ru.proshkina.restaurantvoting.repository.MenuRepository;
+import ru.proshkina.restaurantvoting.service.DataVersions;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
 
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNew;
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFoundWithId;
+import static ru.proshkina.restaurantvoting.util.ValidationUtil.validate;
 
 @Service
 public class DishServiceImpl implements DishService {
 
     private final CrudDishRepository dishRepository;
     private final CrudRestaurantRepository restaurantRepository;
+    private final MenuRepository menuRepository;
+    private final MenuCache menuCache;
+    private final MenuIndex menuIndex;
+    private final DataVersions dataVersions;
 
-    public DishServiceImpl(CrudDishRepository dishRepository, CrudRestaurantRepository restaurantRepository) {
+    public DishServiceImpl(CrudDishRepository dishRepository, CrudRestaurantRepository restaurantRepository,
+                           MenuRepository menuRepository, MenuCache menuCache, MenuIndex menuIndex, DataVersions dataVersions) {
         this.dishRepository = dishRepository;
         this.restaurantRepository = restaurantRepository;
+        this.menuRepository = menuRepository;
+        this.menuCache = menuCache;
+        this.menuIndex = menuIndex;
+        this.dataVersions = dataVersions;
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
     @Transactional
     @Override
     public Dish create(Dish dish, int restaurantId) {
         Assert.notNull(dish, "dish must not be null");
         checkNew(dish);
         dish.setRestaurant(restaurantRepository.getOne(restaurantId));
-        return dishRepository.save(dish);
+        Dish created = dishRepository.save(dish);
+        menuCache.evict(created.getDate());
+        dataVersions.changed(DataVersions.DISHES, restaurantId);
+        return created;
     }
 
     @Override
@@ -42,21 +59,78 @@ public class DishServiceImpl implements DishService {
         return checkNotFoundWithId(dish, id);
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
+    @Transactional
     @Override
     public void delete(int id, int restaurantId) {
-        checkNotFoundWithId(dishRepository.delete(id, restaurantId) != 0, id);
+        LocalDate date = checkNotFoundWithId(dishRepository.getDate(id, restaurantId), id);
+        dishRepository.delete(id, restaurantId);
+        menuCache.evict(date);
+        dataVersions.changed(DataVersions.DISHES, restaurantId);
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
     @Transactional
     @Override
     public void update(Dish dish, int restaurantId) {
         Assert.notNull(dish, "dish must not be null");
         int id = dish.getId();
-        checkNotFoundWithId(get(id, restaurantId), id);
         dish.setRestaurant(restaurantRepository.getOne(restaurantId));
-        dishRepository.save(dish);
+        validate(dish, "dish " + dish.getName());
+        // a dish mostly stays on its date: then one UPDATE, otherwise the previous date is read to be evicted
+        if (dishRepository.updateOnDate(id, restaurantId, dish.getDate(), dish.getName(), dish.getPriceInCents()) == 0) {
+            LocalDate previousDate = checkNotFoundWithId(dishRepository.getDate(id, restaurantId), id);
+            dishRepository.update(id, restaurantId, dish.getDate(), dish.getName(), dish.getPriceInCents());
+            menuCache.evict(previousDate);
+        }
+        menuCache.evict(dish.getDate());
+        dataVersions.changed(DataVersions.DISHES, restaurantId);
+    }
+
+    @Transactional
+    @Override
+    public void replaceMenu(int restaurantId, LocalDate date, List<Dish> dishes) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(dishes, "dishes must not be null");
+        checkNotFoundWithId(restaurantRepository.existsById(restaurantId), restaurantId);
+        Set<String> names = new HashSet<>();
+        for (Dish dish : dishes) {
+            dish.setDate(date);
+            dish.setRestaurant(restaurantRepository.getOne(restaurantId));
+            validate(dish, "dish " + dish.getName());
+            if (!names.add(dish.getName())) {
+                throw new IllegalRequestDataException("dish " + dish.getName() + " is listed more than once");
+            }
+        }
+        if (menuRepository.replace(restaurantId, date, dishes)) {
+            menuCache.evict(date);
+            dataVersions.changed(DataVersions.DISHES, restaurantId);
+        }
+    }
+
+    @Transactional
+    @Override
+    public void copyMenu(Integer restaurantId, LocalDate from, List<LocalDate> to) {
+        Assert.notNull(from, "date must not be null");
+        if (to == null || to.isEmpty()) {
+            throw new IllegalRequestDataException("no dates to copy the menu to");
+        }
+        if (to.contains(from)) {
+            throw new IllegalRequestDataException("menu of " + from + " can't be copied to the same date");
+        }
+        if (restaurantId != null) {
+            checkNotFoundWithId(restaurantRepository.existsById(restaurantId), restaurantId.intValue());
+        }
+        int[] copied = menuRepository.copy(restaurantId, from, to);
+        boolean changed = false;
+        for (int i = 0; i < copied.length; i++) {
+            if (copied[i] > 0) {
+                menuCache.evict(to.get(i));
+                changed = true;
+            }
+        }
+        if (changed) {
+            List<Integer> restaurantIds = restaurantId == null ? menuRepository.getRestaurantIds(from) : Collections.singletonList(restaurantId);
+            restaurantIds.forEach(id -> dataVersions.changed(DataVersions.DISHES, id));
+        }
     }
 
     @Override
@@ -80,4 +154,12 @@ public class DishServiceImpl implements DishService {
     public List<Dish> getAllByRestaurant(int restaurantId) {
         return dishRepository.findAllByRestaurant_IdOrderByDateAscRestaurantIdAscPriceInCentsAsc(restaurantId);
     }
+
+    @Override
+    public List<Dish> search(LocalDate date, String query, Integer minPriceInCents, Integer maxPriceInCents) {
+        Assert.notNull(date, "date must not be null");
+        return menuIndex.search(date, query,
+                minPriceInCents == null ? 0 : minPriceInCents,
+                maxPriceInCents == null ? Integer.MAX_VALUE : maxPriceInCents);
+    }
 }
@@ -0,0 +1,35 @@
+package ru.proshkina.restaurantvoting.service.dish;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.service.restaurant.VoteResultsCache;
+
+import java.time.LocalDate;
+
+/**
+ * Menus by date in the "menu" cache, filled by {@code RestaurantService.getAllWithDishesByDate},
+ * their serialized responses in the "menuResponses" cache and their search indexes in the "menuIndex" cache.
+ * A change of the dishes of a date evicts only that date, together with its vote results listing the restaurants of the menu.
+ */
+@Component
+public class MenuCache {
+    private final Cache menu;
+    private final Cache menuResponses;
+    private final Cache menuIndex;
+    private final VoteResultsCache voteResultsCache;
+
+    public MenuCache(CacheManager cacheManager, VoteResultsCache voteResultsCache) {
+        this.menu = cacheManager.getCache("menu");
+        this.menuResponses = cacheManager.getCache("menuResponses");
+        this.menuIndex = cacheManager.getCache("menuIndex");
+        this.voteResultsCache = voteResultsCache;
+    }
+
+    public void evict(LocalDate date) {
+        menu.evict(date);
+        menuResponses.evict(date);
+        menuIndex.evict(date);
+        voteResultsCache.evict(date);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.proshkina.restaurantvoting.service.dish;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.model.Dish;
+import ru.proshkina.restaurantvoting.repository.CrudDishRepository;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Dishes of a date indexed for search in the "menuIndex" cache, built on the first search and evicted with the menu.
+ * Dishes are kept sorted by price, so a price range is a slice found by binary search; name tokens map to the positions
+ * of their dishes, a query token matches all tokens it is a prefix of.
+ */
+@Component
+public class MenuIndex {
+    private final CrudDishRepository dishRepository;
+    private final Cache cache;
+
+    public MenuIndex(CrudDishRepository dishRepository, CacheManager cacheManager) {
+        this.dishRepository = dishRepository;
+        this.cache = cacheManager.getCache("menuIndex");
+    }
+
+    /**
+     * @param query words every dish name must have a word starting with, all dishes if blank
+     * @return dishes with their restaurants, the cheapest first
+     */
+    public List<Dish> search(LocalDate date, String query, int minPriceInCents, int maxPriceInCents) {
+        return cache.get(date, () -> new DateIndex(dishRepository.findAllByDateOrderByRestaurantIdAscPriceInCentsAsc(date)))
+                .search(tokenize(query), minPriceInCents, maxPriceInCents);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static class DateIndex {
+        private final Dish[] dishes;
+        private final int[] prices;
+        private final NavigableMap<String, BitSet> positions = new TreeMap<>();
+
+        private DateIndex(List<Dish> menu) {
+            dishes = menu.toArray(new Dish[0]);
+            Arrays.sort(dishes, Comparator.comparing(Dish::getPriceInCents));
+            prices = new int[dishes.length];
+            for (int i = 0; i < dishes.length; i++) {
+                prices[i] = dishes[i].getPriceInCents();
+                for (String token : tokenize(dishes[i].getName())) {
+                    positions.computeIfAbsent(token, t -> new BitSet(dishes.length)).set(i);
+                }
+            }
+        }
+
+        private List<Dish> search(List<String> query, int minPrice, int maxPrice) {
+            int from = lowerBound(minPrice);
+            int to = maxPrice == Integer.MAX_VALUE ? prices.length : lowerBound(maxPrice + 1);
+            BitSet matched = new BitSet(dishes.length);
+            matched.set(from, Math.max(from, to));
+            for (String token : query) {
+                BitSet withToken = new BitSet(dishes.length);
+                positions.subMap(token, true, token + Character.MAX_VALUE, false).values().forEach(withToken::or);
+                matched.and(withToken);
+            }
+            List<Dish> found = new ArrayList<>(matched.cardinality());
+            matched.stream().forEach(i -> found.add(dishes[i]));
+            return found;
+        }
+
+        // first position with a price not less than the given one
+        private int lowerBound(int price) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] < price) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -21,4 +21,14 @@ public interface RestaurantService {
     List<Restaurant> getAllWithDishesByDate(LocalDate date);
 
     List<RestaurantTo> getAllWithVotesByDate(LocalDate date);
+
+    /**
+     * Counts the votes of a closed day and saves them as its final results, replacing the sealed ones.
+     */
+    List<RestaurantTo> sealVotesResults(LocalDate date);
+
+    /**
+     * Votes of the date changed: the results of a closed day are sealed again, live ones are counted again.
+     */
+    void refreshVotesResults(LocalDate date);
 }
@@ -6,20 +6,28 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
 import ru.proshkina.restaurantvoting.model.Restaurant;
-import ru.proshkina.restaurantvoting.model.Vote;
 import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
 import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.DailyResultRepository;
+import ru.proshkina.restaurantvoting.service.DataVersions;
+import ru.proshkina.restaurantvoting.service.vote.VoteBatchWriter;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
+import ru.proshkina.restaurantvoting.service.vote.VoteTally;
 import ru.proshkina.restaurantvoting.to.RestaurantTo;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
 
 import java.time.LocalDate;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import static ru.proshkina.restaurantvoting.util.RestaurantUtil.asTo;
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFoundWithId;
+import static ru.proshkina.restaurantvoting.util.ValidationUtil.validate;
 
 
 @Service
@@ -28,27 +36,51 @@ public class RestaurantServiceImpl implements RestaurantService {
 
     private final CrudRestaurantRepository restaurantRepository;
     private final CrudVoteRepository voteRepository;
+    private final DailyResultRepository dailyResultRepository;
+    private final DateTimeFactory dateTimeFactory;
+    private final VoteLedger voteLedger;
+    private final VoteTally voteTally;
+    private final VoteBatchWriter voteBatchWriter;
+    private final VoteResultsCache voteResultsCache;
+    private final DataVersions dataVersions;
 
-    public RestaurantServiceImpl(CrudRestaurantRepository restaurantRepository, CrudVoteRepository voteRepository) {
+    public RestaurantServiceImpl(CrudRestaurantRepository restaurantRepository,
+                                 CrudVoteRepository voteRepository,
+                                 DailyResultRepository dailyResultRepository,
+                                 DateTimeFactory dateTimeFactory,
+                                 VoteLedger voteLedger,
+                                 VoteTally voteTally,
+                                 VoteBatchWriter voteBatchWriter,
+                                 VoteResultsCache voteResultsCache,
+                                 DataVersions dataVersions) {
         this.restaurantRepository = restaurantRepository;
         this.voteRepository = voteRepository;
+        this.dailyResultRepository = dailyResultRepository;
+        this.dateTimeFactory = dateTimeFactory;
+        this.voteLedger = voteLedger;
+        this.voteTally = voteTally;
+        this.voteBatchWriter = voteBatchWriter;
+        this.voteResultsCache = voteResultsCache;
+        this.dataVersions = dataVersions;
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
     @Override
     public Restaurant create(Restaurant restaurant) {
         Assert.notNull(restaurant, "restaurant must not be null");
-        return restaurantRepository.save(restaurant);
+        Restaurant created = restaurantRepository.save(restaurant);
+        dataVersions.changed(DataVersions.RESTAURANTS);
+        return created;
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
+    @CacheEvict(value = {"menu", "menuResponses", "menuIndex", "results", "liveResults"}, allEntries = true)
     @Transactional
     @Override
     public void update(Restaurant restaurant) {
         Assert.notNull(restaurant, "restaurant must not be null");
         int id = restaurant.getId();
-        checkNotFoundWithId(get(id), id);
-        restaurantRepository.save(restaurant);
+        validate(restaurant, "restaurant " + restaurant.getName());
+        checkNotFoundWithId(restaurantRepository.update(id, restaurant.getName()) != 0, id);
+        dataVersions.changed(DataVersions.RESTAURANTS);
     }
 
     @Override
@@ -56,10 +88,13 @@ public class RestaurantServiceImpl implements RestaurantService {
         return checkNotFoundWithId(restaurantRepository.findById(id).orElse(null), id);
     }
 
-    @CacheEvict(value = "menu", allEntries = true)
+    @CacheEvict(value = {"menu", "menuResponses", "menuIndex", "results", "liveResults"}, allEntries = true)
     @Override
     public void delete(int id) {
         checkNotFoundWithId(restaurantRepository.delete(id) != 0, id);
+        voteLedger.removeRestaurant(id);
+        dataVersions.changed(DataVersions.RESTAURANTS);
+        dataVersions.changed(DataVersions.DISHES, id);
     }
 
     @Override
@@ -74,15 +109,61 @@ public class RestaurantServiceImpl implements RestaurantService {
         return restaurantRepository.findAllByDishes_DateOrderById(date);
     }
 
-    @Transactional
     @Override
     public List<RestaurantTo> getAllWithVotesByDate(LocalDate date) {
+        Assert.notNull(date, "date must not be null");
+        if (isVotingClosed(date)) {
+            return voteResultsCache.getClosed(date, () -> {
+                List<RestaurantTo> sealed = dailyResultRepository.getAll(date);
+                return sealed.isEmpty() ? countVotes(date) : sealed;
+            });
+        }
+        return voteResultsCache.getLive(date, () -> countVotes(date));
+    }
+
+    @Override
+    public List<RestaurantTo> sealVotesResults(LocalDate date) {
+        Assert.notNull(date, "date must not be null");
+        if (!isVotingClosed(date)) {
+            throw new IllegalRequestDataException("voting for " + date + " is not closed yet");
+        }
+        // votes accepted before the deadline may still wait in the writer queue
+        voteBatchWriter.flush();
+        Map<Integer, Integer> restaurantVoteCountMap = new HashMap<>();
+        voteRepository.countByRestaurantForDate(date)
+                .forEach(row -> restaurantVoteCountMap.put((Integer) row[0], ((Long) row[1]).intValue()));
+        List<RestaurantTo> results = asResults(date, restaurantVoteCountMap);
+        dailyResultRepository.save(date, results);
+        voteResultsCache.evict(date);
+        return results;
+    }
+
+    @Override
+    public void refreshVotesResults(LocalDate date) {
+        if (isVotingClosed(date)) {
+            sealVotesResults(date);
+        } else {
+            voteResultsCache.evict(date);
+        }
+    }
+
+    private boolean isVotingClosed(LocalDate date) {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        return date.isBefore(today) ||
+                date.equals(today) && dateTimeFactory.getCurrentTime().isAfter(dateTimeFactory.getTimeLimit());
+    }
+
+    private List<RestaurantTo> countVotes(LocalDate date) {
+        Map<Integer, Integer> restaurantVoteCountMap = date.equals(voteLedger.getDate()) ?
+                voteLedger.getVotesCount() :
+                voteTally.get(date);
+        return asResults(date, restaurantVoteCountMap);
+    }
+
+    private List<RestaurantTo> asResults(LocalDate date, Map<Integer, Integer> restaurantVoteCountMap) {
         List<Restaurant> restaurantForDateList = restaurantRepository.findAllByDishes_DateOrderById(date);
-        List<Vote> voteForDateList = voteRepository.findAllByDateOrderByTimeAsc(date);
-        Map<Restaurant, Long> restaurantVoteCountMap = voteForDateList.stream()
-                .collect(Collectors.groupingBy(Vote::getRestaurant, Collectors.counting()));
         return restaurantForDateList.stream()
-                .map(restaurant -> asTo(restaurant, restaurantVoteCountMap.getOrDefault(restaurant, 0L).intValue(), date))
+                .map(restaurant -> asTo(restaurant, restaurantVoteCountMap.getOrDefault(restaurant.getId(), 0), date))
                 .sorted(Comparator.comparingInt(RestaurantTo::getVotesCount).reversed())
                 .collect(Collectors.toList());
     }
@@ -0,0 +1,71 @@
+package ru.proshkina.restaurantvoting.service.restaurant;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.service.DataVersions;
+import ru.proshkina.restaurantvoting.service.vote.VoteTally;
+import ru.proshkina.restaurantvoting.to.RestaurantTo;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Vote results by date in two caches. Results of closed days are kept in "results" until evicted by size
+ * or by a change of the votes, menus or restaurants of the date. Results of the current day are kept in
+ * "liveResults" together with the {@link VoteTally} change count they were computed at and are counted
+ * again once any vote changes. Evicting results of a date changes the version of the results.
+ */
+@Component
+public class VoteResultsCache {
+    private static final String RESULTS = "results";
+    private static final String LIVE_RESULTS = "liveResults";
+
+    private final Cache results;
+    private final Cache liveResults;
+    private final VoteTally voteTally;
+    private final DataVersions dataVersions;
+
+    public VoteResultsCache(CacheManager cacheManager, VoteTally voteTally, DataVersions dataVersions) {
+        this.results = cacheManager.getCache(RESULTS);
+        this.liveResults = cacheManager.getCache(LIVE_RESULTS);
+        this.voteTally = voteTally;
+        this.dataVersions = dataVersions;
+    }
+
+    public List<RestaurantTo> getClosed(LocalDate date, Supplier<List<RestaurantTo>> loader) {
+        return results.get(date, loader::get);
+    }
+
+    public List<RestaurantTo> getLive(LocalDate date, Supplier<List<RestaurantTo>> loader) {
+        // read before counting: a vote arriving meanwhile makes the entry stale rather than lost
+        long changes = voteTally.getChanges();
+        LiveResults cached = liveResults.get(date, LiveResults.class);
+        if (cached != null && cached.changes == changes) {
+            return cached.results;
+        }
+        List<RestaurantTo> counted = loader.get();
+        liveResults.put(date, new LiveResults(changes, counted));
+        return counted;
+    }
+
+    public void evict(LocalDate date) {
+        results.evict(date);
+        liveResults.evict(date);
+        dataVersions.changed(DataVersions.RESULTS);
+    }
+
+    private static class LiveResults implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long changes;
+        private final List<RestaurantTo> results;
+
+        private LiveResults(long changes, List<RestaurantTo> results) {
+            this.changes = changes;
+            this.results = results;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.proshkina.restaurantvoting.service.restaurant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.repository.DailyResultRepository;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jobs of the voting day, driven by the date and time of {@link DateTimeFactory}:
+ * <ul>
+ * <li>closing: once the voting deadline of the day passes, its results are sealed by {@link RestaurantService};</li>
+ * <li>rollover: on a new day (and on the first check after start) the closed days not sealed yet are sealed,
+ * e.g. the days the application was down, up to vote.day.sealBackfillDays back; today's votes and results are loaded before the first requests;</li>
+ * <li>warming: the menus of today and tomorrow are loaded again on every check once a change of a menu evicts them.</li>
+ * </ul>
+ */
+@Component
+public class VotingDayScheduler {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final RestaurantService restaurantService;
+    private final DailyResultRepository dailyResultRepository;
+    private final VoteLedger voteLedger;
+    private final DateTimeFactory dateTimeFactory;
+    private final long checkMs;
+    private final int sealBackfillDays;
+
+    private ScheduledExecutorService scheduler;
+    private LocalDate today;
+    private LocalDate sealed;
+
+    public VotingDayScheduler(RestaurantService restaurantService,
+                              DailyResultRepository dailyResultRepository,
+                              VoteLedger voteLedger,
+                              DateTimeFactory dateTimeFactory,
+                              @Value("${vote.day.checkMs}") long checkMs,
+                              @Value("${vote.day.sealBackfillDays}") int sealBackfillDays) {
+        this.restaurantService = restaurantService;
+        this.dailyResultRepository = dailyResultRepository;
+        this.voteLedger = voteLedger;
+        this.dateTimeFactory = dateTimeFactory;
+        this.checkMs = checkMs;
+        this.sealBackfillDays = sealBackfillDays;
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "voting-day-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runQuietly, checkMs, checkMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdown();
+    }
+
+    synchronized void rollOverIfNewDay() {
+        LocalDate current = dateTimeFactory.getCurrentDate();
+        if (!current.equals(today)) {
+            sealMissedDays(current);
+            voteLedger.load();
+            restaurantService.getAllWithVotesByDate(current);
+            today = current;
+            log.info("voting day rolled over to {}", current);
+        }
+        // cached unless a menu changed since the previous check
+        restaurantService.getAllWithDishesByDate(current);
+        restaurantService.getAllWithDishesByDate(current.plusDays(1));
+    }
+
+    synchronized void sealIfClosed() {
+        LocalDate current = dateTimeFactory.getCurrentDate();
+        if (current.equals(sealed) || !dateTimeFactory.getCurrentTime().isAfter(dateTimeFactory.getTimeLimit())) {
+            return;
+        }
+        if (!dailyResultRepository.isSealed(current)) {
+            int restaurants = restaurantService.sealVotesResults(current).size();
+            log.info("vote results of {} sealed for {} restaurants", current, restaurants);
+        }
+        sealed = current;
+    }
+
+    /**
+     * Seals the days after the last sealed one up to yesterday; only yesterday when nothing is sealed yet.
+     */
+    private void sealMissedDays(LocalDate current) {
+        LocalDate yesterday = current.minusDays(1);
+        LocalDate lastSealed = dailyResultRepository.getLastSealed();
+        LocalDate from = lastSealed == null ? yesterday : lastSealed.plusDays(1);
+        LocalDate earliest = current.minusDays(sealBackfillDays);
+        for (LocalDate date = from.isBefore(earliest) ? earliest : from; !date.isAfter(yesterday); date = date.plusDays(1)) {
+            int restaurants = restaurantService.sealVotesResults(date).size();
+            log.info("vote results of {} sealed for {} restaurants", date, restaurants);
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            rollOverIfNewDay();
+            sealIfClosed();
+        } catch (Exception e) {
+            log.error("voting day job failed", e);
+        }
+    }
+}
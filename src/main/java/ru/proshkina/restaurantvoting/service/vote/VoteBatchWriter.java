@@ -0,0 +1,256 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit of votes: submitted votes and removals wait in a queue and a single writer thread
+ * saves everything queued since the previous flush with JDBC batches in one transaction.
+ * A place in the queue is reserved before submitting, so that callers holding locks never wait for the writer.
+ * A write that fails is retried by the following flushes with a growing delay, unless a later write of the same user
+ * and date replaces it, and its future fails once the attempts are exhausted.
+ */
+@Component
+public class VoteBatchWriter {
+    private static final String DELETE = "DELETE FROM votes WHERE date=:date AND user_id=:userId";
+    private static final long FIRST_RETRY_DELAY_MS = 100;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingVote> queue = new LinkedBlockingQueue<>();
+    private final Semaphore places;
+    private final Map<String, PendingVote> retries = new LinkedHashMap<>();
+    private final long flushDelayMs;
+    private final int maxAttempts;
+
+    private ScheduledExecutorService writer;
+
+    public VoteBatchWriter(DataSource dataSource,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${vote.batch.capacity}") int capacity,
+                           @Value("${vote.batch.flushDelayMs}") long flushDelayMs,
+                           @Value("${vote.batch.maxAttempts}") int maxAttempts) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.places = new Semaphore(capacity);
+        this.flushDelayMs = flushDelayMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @PostConstruct
+    void start() {
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vote-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushDelayMs, flushDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        writer.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * Blocks while the queue is full. The place is taken by the next {@link #submit} or {@link #submitRemoval},
+     * or given back with {@link #release}.
+     */
+    public void reserve() {
+        try {
+            places.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("vote submission is interrupted", e);
+        }
+    }
+
+    public void release() {
+        places.release();
+    }
+
+    /**
+     * Never blocks, the place in the queue is reserved beforehand.
+     *
+     * @param id id of the vote if it is new, see {@link ru.proshkina.restaurantvoting.repository.IdBlocks}
+     * @return future completed when the transaction containing the vote commits
+     */
+    public CompletableFuture<Void> submit(int id, LocalDate date, LocalTime time, int userId, int restaurantId) {
+        return enqueue(new PendingVote(id, date, time, userId, restaurantId));
+    }
+
+    /**
+     * Deletes the vote of the user for the date, in order with the votes submitted before.
+     */
+    public CompletableFuture<Void> submitRemoval(LocalDate date, LocalTime time, int userId) {
+        return enqueue(new PendingVote(0, date, time, userId, 0));
+    }
+
+    private CompletableFuture<Void> enqueue(PendingVote pending) {
+        queue.add(pending);
+        return pending.saved;
+    }
+
+    /**
+     * Saves everything queued, retries included.
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    private synchronized void flush(boolean all) {
+        List<PendingVote> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        places.release(batch.size());
+        long now = System.currentTimeMillis();
+        // the queue keeps the order of the writes of each user, so the last one wins
+        Map<String, PendingVote> latest = new LinkedHashMap<>();
+        retries.values().removeIf(retry -> {
+            if (all || retry.retryAt <= now) {
+                latest.put(retry.key(), retry);
+                return true;
+            }
+            return false;
+        });
+        for (PendingVote pending : batch) {
+            PendingVote replaced = latest.put(pending.key(), pending);
+            if (replaced == null) {
+                replaced = retries.remove(pending.key());
+            }
+            if (replaced != null) {
+                replaced.follow(pending);
+            }
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+        Map<String, Exception> failures = write(latest);
+        latest.forEach((key, pending) -> {
+            Exception failure = failures.get(key);
+            if (failure == null) {
+                pending.saved.complete(null);
+            } else if (++pending.attempts < maxAttempts) {
+                pending.retryAt = now + (FIRST_RETRY_DELAY_MS << (pending.attempts - 1));
+                retries.put(key, pending);
+            } else {
+                log.error("vote of user {} for {} is not saved after {} attempts", pending.userId, pending.date, pending.attempts, failure);
+                pending.saved.completeExceptionally(failure);
+            }
+        });
+    }
+
+    private Map<String, Exception> write(Map<String, PendingVote> latest) {
+        List<SqlParameterSource> upserts = new ArrayList<>();
+        List<SqlParameterSource> deletes = new ArrayList<>();
+        latest.values().forEach(pending -> (pending.isRemoval() ? deletes : upserts).add(pending.asParameters()));
+        try {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.batchUpdate(DELETE, deletes.toArray(new SqlParameterSource[0]));
+                return jdbcTemplate.batchUpdate(CrudVoteRepository.UPSERT, upserts.toArray(new SqlParameterSource[0]));
+            });
+            log.debug("{} votes saved with {} upserts and {} deletes", latest.size(), upserts.size(), deletes.size());
+            return Collections.emptyMap();
+        } catch (Exception e) {
+            log.warn("batch of {} votes failed, saving one by one: {}", latest.size(), e.toString());
+        }
+        Map<String, Exception> failures = new HashMap<>();
+        latest.forEach((key, pending) -> {
+            try {
+                jdbcTemplate.update(pending.isRemoval() ? DELETE : CrudVoteRepository.UPSERT, pending.asParameters());
+            } catch (Exception single) {
+                log.warn("vote of user {} for {} is not saved: {}", pending.userId, pending.date, single.toString());
+                failures.put(key, single);
+            }
+        });
+        return failures;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush(false);
+        } catch (Exception e) {
+            log.error("vote batch flush failed", e);
+        }
+    }
+
+    private static class PendingVote {
+        private final int id;
+        private final LocalDate date;
+        private final LocalTime time;
+        private final int userId;
+        private final int restaurantId;
+        private final CompletableFuture<Void> saved = new CompletableFuture<>();
+        private int attempts;
+        private long retryAt;
+
+        private PendingVote(int id, LocalDate date, LocalTime time, int userId, int restaurantId) {
+            this.id = id;
+            this.date = date;
+            this.time = time;
+            this.userId = userId;
+            this.restaurantId = restaurantId;
+        }
+
+        private String key() {
+            return date + ":" + userId;
+        }
+
+        private boolean isRemoval() {
+            return restaurantId == 0;
+        }
+
+        /**
+         * A replaced write is done when the one replacing it is.
+         */
+        private void follow(PendingVote replacing) {
+            replacing.saved.whenComplete((result, failure) -> {
+                if (failure == null) {
+                    saved.complete(null);
+                } else {
+                    saved.completeExceptionally(failure);
+                }
+            });
+        }
+
+        private SqlParameterSource asParameters() {
+            return new MapSqlParameterSource()
+                    .addValue("id", id)
+                    .addValue("date", Date.valueOf(date))
+                    .addValue("time", Time.valueOf(time))
+                    .addValue("userId", userId)
+                    .addValue("restaurantId", restaurantId);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
+import ru.proshkina.restaurantvoting.repository.CrudUserRepository;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.VoteImportTo;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk import of historical or lost votes. The input is read line by line, every row is checked
+ * against the ids of users and restaurants loaded once, and rows are upserted with JDBC batches,
+ * each batch in its own transaction, so memory use does not depend on the size of the input.
+ */
+@Component
+public class VoteImporter {
+    private static final int MAX_ERRORS = 100;
+
+    public enum Format {
+        /**
+         * One object per line: {"date":"2018-10-26","time":"10:00","userId":100000,"restaurantId":100004}
+         */
+        NDJSON,
+        /**
+         * One row per line: date,time,userId,restaurantId; an optional header line is skipped
+         */
+        CSV
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final CrudUserRepository userRepository;
+    private final CrudRestaurantRepository restaurantRepository;
+    private final DateTimeFactory dateTimeFactory;
+    private final VoteLedger voteLedger;
+    private final VoteBatchWriter voteBatchWriter;
+    private final IdBlocks idBlocks;
+    private final RestaurantService restaurantService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public VoteImporter(CrudUserRepository userRepository,
+                        CrudRestaurantRepository restaurantRepository,
+                        DateTimeFactory dateTimeFactory,
+                        VoteLedger voteLedger,
+                        VoteBatchWriter voteBatchWriter,
+                        IdBlocks idBlocks,
+                        RestaurantService restaurantService,
+                        DataSource dataSource,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${vote.import.batchSize}") int batchSize) {
+        this.userRepository = userRepository;
+        this.restaurantRepository = restaurantRepository;
+        this.dateTimeFactory = dateTimeFactory;
+        this.voteLedger = voteLedger;
+        this.voteBatchWriter = voteBatchWriter;
+        this.idBlocks = idBlocks;
+        this.restaurantService = restaurantService;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Rows that cannot be parsed or refer to unknown users or restaurants are skipped and reported.
+     * A vote already present for the same date and user is replaced.
+     */
+    public VoteImportTo importVotes(Reader input, Format format) {
+        Set<Integer> userIds = new HashSet<>(userRepository.getAllIds());
+        Set<Integer> restaurantIds = new HashSet<>(restaurantRepository.getAllIds());
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        // votes already accepted by the ledger must not overwrite the imported ones later
+        voteBatchWriter.flush();
+
+        List<SqlParameterSource> batch = new ArrayList<>(batchSize);
+        List<String> errors = new ArrayList<>();
+        int imported = 0;
+        int rejected = 0;
+        Set<LocalDate> dates = new HashSet<>();
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && line.startsWith("date"))) {
+                    continue;
+                }
+                try {
+                    ImportedVote vote = format == Format.CSV ? parseCsv(line) : parseJson(line);
+                    if (vote.date.isAfter(today)) {
+                        throw new IllegalArgumentException("date " + vote.date + " is in the future");
+                    }
+                    if (!userIds.contains(vote.userId)) {
+                        throw new IllegalArgumentException("user " + vote.userId + " does not exist");
+                    }
+                    if (!restaurantIds.contains(vote.restaurantId)) {
+                        throw new IllegalArgumentException("restaurant " + vote.restaurantId + " does not exist");
+                    }
+                    dates.add(vote.date);
+                    batch.add(vote.asParameters(idBlocks.next(IdBlocks.VOTE_SEQ)));
+                } catch (RuntimeException | IOException e) {
+                    rejected++;
+                    if (errors.size() < MAX_ERRORS) {
+                        errors.add("line " + lineNumber + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    imported += save(batch);
+                }
+            }
+            imported += save(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (dates.contains(today)) {
+                // votes accepted during the import are saved before today's votes are loaded again
+                voteLedger.reload();
+            }
+            // closed imported days are sealed again
+            dates.forEach(restaurantService::refreshVotesResults);
+        }
+        log.info("{} votes imported, {} rejected", imported, rejected);
+        return new VoteImportTo(imported, rejected, errors);
+    }
+
+    private int save(List<SqlParameterSource> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        SqlParameterSource[] params = batch.toArray(new SqlParameterSource[0]);
+        transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(CrudVoteRepository.UPSERT, params));
+        batch.clear();
+        return params.length;
+    }
+
+    private ImportedVote parseCsv(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("expected 4 fields: date,time,userId,restaurantId");
+        }
+        return new ImportedVote(LocalDate.parse(fields[0].trim()), LocalTime.parse(fields[1].trim()),
+                Integer.parseInt(fields[2].trim()), Integer.parseInt(fields[3].trim()));
+    }
+
+    private ImportedVote parseJson(String line) throws IOException {
+        LocalDate date = null;
+        LocalTime time = null;
+        Integer userId = null;
+        Integer restaurantId = null;
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "date":
+                        date = LocalDate.parse(parser.getText());
+                        break;
+                    case "time":
+                        time = LocalTime.parse(parser.getText());
+                        break;
+                    case "userId":
+                        userId = parser.getValueAsInt();
+                        break;
+                    case "restaurantId":
+                        restaurantId = parser.getValueAsInt();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        if (date == null || time == null || userId == null || restaurantId == null) {
+            throw new IllegalArgumentException("date, time, userId and restaurantId are required");
+        }
+        return new ImportedVote(date, time, userId, restaurantId);
+    }
+
+    private static class ImportedVote {
+        private final LocalDate date;
+        private final LocalTime time;
+        private final int userId;
+        private final int restaurantId;
+
+        private ImportedVote(LocalDate date, LocalTime time, int userId, int restaurantId) {
+            this.date = date;
+            this.time = time;
+            this.userId = userId;
+            this.restaurantId = restaurantId;
+        }
+
+        private SqlParameterSource asParameters(int id) {
+            return new MapSqlParameterSource()
+                    .addValue("id", id)
+                    .addValue("date", Date.valueOf(date))
+                    .addValue("time", Time.valueOf(time))
+                    .addValue("userId", userId)
+                    .addValue("restaurantId", restaurantId);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the votes accepted by {@link VoteLedger}, one file per day written through
+ * a memory-mapped buffer and forced to disk periodically. Votes not yet saved when the application
+ * stopped are replayed into the database on startup.
+ * <p>
+ * A checkpoint file next to the journal keeps the position before which every record is saved,
+ * moved forward as the ledger reports saved records; only the records after it are replayed.
+ * <p>
+ * A record is 24 bytes: epochDay, nanoOfDay, userId, restaurantId (0 when the vote is removed)
+ * and a CRC32 of the preceding 20 bytes, written last so that a torn record ends the replay.
+ */
+@Component
+public class VoteJournal {
+    static final int RECORD_SIZE = 24;
+    private static final int PAYLOAD_SIZE = 20;
+    private static final String PREFIX = "votes-";
+    private static final String SUFFIX = ".journal";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String DELETE = "DELETE FROM votes WHERE date=:date AND user_id=:userId";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DateTimeFactory dateTimeFactory;
+    private final VoteBatchWriter voteBatchWriter;
+    private final IdBlocks idBlocks;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path dir;
+    private final long regionSize;
+    private final long syncMs;
+    private final AtomicBoolean replayed = new AtomicBoolean();
+    private final CRC32 crc = new CRC32();
+
+    private ScheduledExecutorService syncer;
+    private LocalDate date;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long regionStart;
+    private boolean dirty;
+    // positions of the records not saved yet
+    private final NavigableSet<Long> pending = new TreeSet<>();
+    private long checkpoint;
+
+    public VoteJournal(DateTimeFactory dateTimeFactory,
+                       VoteBatchWriter voteBatchWriter,
+                       IdBlocks idBlocks,
+                       DataSource dataSource,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${vote.journal.dir}") String dir,
+                       @Value("${vote.journal.regionRecords}") int regionRecords,
+                       @Value("${vote.journal.syncMs}") long syncMs) {
+        this.dateTimeFactory = dateTimeFactory;
+        this.voteBatchWriter = voteBatchWriter;
+        this.idBlocks = idBlocks;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dir = Paths.get(dir);
+        this.regionSize = (long) regionRecords * RECORD_SIZE;
+        this.syncMs = syncMs;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(dir);
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vote-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncMs, syncMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    synchronized void stop() throws IOException {
+        syncer.shutdown();
+        close();
+    }
+
+    /**
+     * Replays journals left by the previous run once the schema is initialized;
+     * journals of past days are deleted afterwards.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void replay() throws IOException {
+        if (!replayed.compareAndSet(false, true)) {
+            return;
+        }
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        for (Path file : journalFiles()) {
+            LocalDate fileDate = LocalDate.parse(file.getFileName().toString().substring(PREFIX.length()).replace(SUFFIX, ""));
+            int count = replay(file, readCheckpoint(fileDate));
+            log.info("{} votes replayed from {}", count, file);
+            if (fileDate.isBefore(today)) {
+                Files.delete(file);
+                Files.deleteIfExists(checkpointOf(fileDate));
+            } else {
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                    writeCheckpoint(fileDate, validLength(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return position of the record, to be reported with {@link #persisted} once the vote is saved
+     */
+    public long append(LocalDate voteDate, LocalTime time, int userId, int restaurantId) {
+        return write(voteDate, time, userId, restaurantId);
+    }
+
+    public long appendRemoval(LocalDate voteDate, LocalTime time, int userId) {
+        return write(voteDate, time, userId, 0);
+    }
+
+    /**
+     * The record needs no replay anymore: its vote is saved or given up.
+     */
+    public synchronized void persisted(LocalDate voteDate, long position) {
+        if (voteDate.equals(date)) {
+            pending.remove(position);
+        }
+    }
+
+    private synchronized long write(LocalDate voteDate, LocalTime time, int userId, int restaurantId) {
+        try {
+            if (!voteDate.equals(date)) {
+                rotate(voteDate);
+            }
+            if (buffer.remaining() < RECORD_SIZE) {
+                map(regionStart + buffer.position());
+            }
+            int start = buffer.position();
+            long position = regionStart + start;
+            buffer.putInt((int) voteDate.toEpochDay())
+                    .putLong(time.toNanoOfDay())
+                    .putInt(userId)
+                    .putInt(restaurantId);
+            crc.reset();
+            crc.update(buffer.duplicate().position(start).limit(start + PAYLOAD_SIZE));
+            buffer.putInt((int) crc.getValue());
+            dirty = true;
+            pending.add(position);
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("vote journal is not writable", e);
+        }
+    }
+
+    void sync() {
+        MappedByteBuffer written = null;
+        synchronized (this) {
+            if (buffer == null) {
+                return;
+            }
+            if (dirty) {
+                dirty = false;
+                written = buffer;
+            }
+            try {
+                checkpoint();
+            } catch (Exception e) {
+                log.error("vote journal checkpoint failed", e);
+            }
+        }
+        // votes keep being appended while the pages are forced
+        try {
+            if (written != null) {
+                written.force();
+            }
+        } catch (Exception e) {
+            log.error("vote journal sync failed", e);
+        }
+    }
+
+    private void checkpoint() throws IOException {
+        long position = pending.isEmpty() ? regionStart + buffer.position() : pending.first();
+        if (position != checkpoint) {
+            writeCheckpoint(date, position);
+            checkpoint = position;
+        }
+    }
+
+    private void rotate(LocalDate newDate) throws IOException {
+        LocalDate previous = date;
+        close();
+        date = newDate;
+        Path file = fileOf(newDate);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = 0;
+        if (channel.size() > 0) {
+            end = validLength(channel);
+        }
+        map(end);
+        pending.clear();
+        checkpoint = readCheckpoint(newDate);
+        if (previous != null && previous.isBefore(newDate)) {
+            // the previous day is complete once everything queued for it is saved
+            voteBatchWriter.flush();
+            Files.deleteIfExists(fileOf(previous));
+            Files.deleteIfExists(checkpointOf(previous));
+        }
+    }
+
+    private void map(long position) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        regionStart = position;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+    }
+
+    private void close() throws IOException {
+        if (channel != null) {
+            checkpoint();
+            buffer.force();
+            channel.close();
+            channel = null;
+            buffer = null;
+            date = null;
+        }
+    }
+
+    private int replay(Path file, long checkpoint) throws IOException {
+        Map<String, MapSqlParameterSource> latest = new LinkedHashMap<>();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (checkpoint >= in.size()) {
+                return 0;
+            }
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, checkpoint, in.size() - checkpoint);
+            CRC32 check = new CRC32();
+            while (data.remaining() >= RECORD_SIZE && isValid(data, check)) {
+                LocalDate voteDate = LocalDate.ofEpochDay(data.getInt());
+                LocalTime time = LocalTime.ofNanoOfDay(data.getLong());
+                int userId = data.getInt();
+                int restaurantId = data.getInt();
+                data.getInt();
+                latest.put(voteDate + ":" + userId, new MapSqlParameterSource()
+                        .addValue("date", Date.valueOf(voteDate))
+                        .addValue("time", Time.valueOf(time))
+                        .addValue("userId", userId)
+                        .addValue("restaurantId", restaurantId));
+            }
+        }
+        List<SqlParameterSource> upserts = new ArrayList<>();
+        List<SqlParameterSource> deletes = new ArrayList<>();
+        latest.values().forEach(params -> {
+            if ((Integer) params.getValue("restaurantId") == 0) {
+                deletes.add(params);
+            } else {
+                upserts.add(params.addValue("id", idBlocks.next(IdBlocks.VOTE_SEQ)));
+            }
+        });
+        if (!deletes.isEmpty()) {
+            transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(DELETE, deletes.toArray(new SqlParameterSource[0])));
+        }
+        return save(upserts);
+    }
+
+    private int save(List<SqlParameterSource> upserts) {
+        try {
+            transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(CrudVoteRepository.UPSERT, upserts.toArray(new SqlParameterSource[0])));
+            return upserts.size();
+        } catch (Exception e) {
+            log.warn("replay batch failed, saving one by one: {}", e.toString());
+        }
+        int saved = 0;
+        for (SqlParameterSource params : upserts) {
+            try {
+                jdbcTemplate.update(CrudVoteRepository.UPSERT, params);
+                saved++;
+            } catch (Exception e) {
+                log.warn("vote of user {} for {} is not replayed: {}", params.getValue("userId"), params.getValue("date"), e.toString());
+            }
+        }
+        return saved;
+    }
+
+    private long validLength(FileChannel in) throws IOException {
+        MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        CRC32 check = new CRC32();
+        while (data.remaining() >= RECORD_SIZE && isValid(data, check)) {
+            data.position(data.position() + RECORD_SIZE);
+        }
+        return data.position();
+    }
+
+    private static boolean isValid(ByteBuffer data, CRC32 check) {
+        int start = data.position();
+        check.reset();
+        check.update(data.duplicate().position(start).limit(start + PAYLOAD_SIZE));
+        return data.getInt(start + PAYLOAD_SIZE) == (int) check.getValue();
+    }
+
+    private List<Path> journalFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private Path fileOf(LocalDate fileDate) {
+        return dir.resolve(PREFIX + fileDate + SUFFIX);
+    }
+
+    private Path checkpointOf(LocalDate fileDate) {
+        return dir.resolve(PREFIX + fileDate + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * @return 0 if there is no checkpoint or it is torn: the whole journal is replayed
+     */
+    private long readCheckpoint(LocalDate fileDate) throws IOException {
+        Path file = checkpointOf(fileDate);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length == Long.BYTES ? ByteBuffer.wrap(bytes).getLong() : 0;
+    }
+
+    private void writeCheckpoint(LocalDate fileDate, long position) throws IOException {
+        Files.write(checkpointOf(fileDate), ByteBuffer.allocate(Long.BYTES).putLong(position).array());
+    }
+}
@@ -0,0 +1,338 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFoundWithId;
+
+/**
+ * In-memory state of the current voting day: the choice of every user, counted in {@link VoteTally}.
+ * Changes are validated and applied in memory, recorded in {@link VoteJournal} and handed to {@link VoteBatchWriter} to be saved.
+ */
+@Component
+public class VoteLedger {
+    private static final int LOCK_STRIPES = 64;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final CrudVoteRepository voteRepository;
+    private final CrudRestaurantRepository restaurantRepository;
+    private final IdBlocks idBlocks;
+    private final DateTimeFactory dateTimeFactory;
+    private final VoteBatchWriter voteBatchWriter;
+    private final VoteJournal voteJournal;
+    private final VoteTally voteTally;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private volatile Day day;
+
+    public VoteLedger(CrudVoteRepository voteRepository,
+                      CrudRestaurantRepository restaurantRepository,
+                      IdBlocks idBlocks,
+                      DateTimeFactory dateTimeFactory,
+                      VoteBatchWriter voteBatchWriter,
+                      VoteJournal voteJournal,
+                      VoteTally voteTally) {
+        this.voteRepository = voteRepository;
+        this.restaurantRepository = restaurantRepository;
+        this.idBlocks = idBlocks;
+        this.dateTimeFactory = dateTimeFactory;
+        this.voteBatchWriter = voteBatchWriter;
+        this.voteJournal = voteJournal;
+        this.voteTally = voteTally;
+        Arrays.setAll(locks, i -> new Object());
+    }
+
+    public LocalDate getDate() {
+        return current().date;
+    }
+
+    /**
+     * Loads today's votes unless they are loaded already, so that the first vote of the day does not wait for them.
+     */
+    public void load() {
+        current();
+    }
+
+    public Integer getRestaurantId(int userId) {
+        Ballot ballot = current().ballots.get(userId);
+        return ballot == null ? null : ballot.restaurantId;
+    }
+
+    public Map<Integer, Integer> getVotesCount() {
+        return voteTally.get(current().date);
+    }
+
+    /**
+     * A repeated vote for the same restaurant changes nothing and is not saved again.
+     * A user keeps the id of the vote of the day when changing it.
+     * A vote that can't be saved is rolled back to the last saved one.
+     */
+    public AcceptedVote vote(int userId, int restaurantId, LocalTime time) {
+        Day current = current();
+        current.checkRestaurant(restaurantId);
+        // a full writer queue holds up this user only, not the others of the lock stripe
+        voteBatchWriter.reserve();
+        // votes of one user reach the writer queue in the order they are applied here
+        synchronized (locks[userId & (LOCK_STRIPES - 1)]) {
+            if (current != day || !current.restaurants.contains(restaurantId)) {
+                // reloaded or the restaurant removed meanwhile
+                voteBatchWriter.release();
+                return vote(userId, restaurantId, time);
+            }
+            Ballot previous = current.ballots.get(userId);
+            if (previous != null && Integer.valueOf(restaurantId).equals(previous.restaurantId)) {
+                voteBatchWriter.release();
+                return new AcceptedVote(previous.id, previous.saved);
+            }
+            try {
+                int id = previous == null ? idBlocks.next(IdBlocks.VOTE_SEQ) : previous.id;
+                Ballot ballot = new Ballot(id, restaurantId, time, previous);
+                current.ballots.put(userId, ballot);
+                voteTally.move(current.date, previous == null ? null : previous.restaurantId, restaurantId);
+                long record = voteJournal.append(current.date, time, userId, restaurantId);
+                submit(current, userId, ballot, record, voteBatchWriter.submit(id, current.date, time, userId, restaurantId));
+                return new AcceptedVote(id, ballot.saved);
+            } catch (RuntimeException e) {
+                voteBatchWriter.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return future completed when the removal is saved, null if the user has no today's vote with this id
+     */
+    public CompletableFuture<Void> remove(int userId, int id) {
+        Day current = current();
+        voteBatchWriter.reserve();
+        synchronized (locks[userId & (LOCK_STRIPES - 1)]) {
+            if (current != day) {
+                voteBatchWriter.release();
+                return remove(userId, id);
+            }
+            Ballot previous = current.ballots.get(userId);
+            if (previous == null || previous.restaurantId == null || previous.id != id) {
+                voteBatchWriter.release();
+                return null;
+            }
+            try {
+                LocalTime time = dateTimeFactory.getCurrentTime();
+                // the removed ballot keeps its id for the next vote of the day
+                Ballot ballot = new Ballot(id, null, time, previous);
+                current.ballots.put(userId, ballot);
+                voteTally.move(current.date, previous.restaurantId, null);
+                long record = voteJournal.appendRemoval(current.date, time, userId);
+                submit(current, userId, ballot, record, voteBatchWriter.submitRemoval(current.date, time, userId));
+                return ballot.saved;
+            } catch (RuntimeException e) {
+                voteBatchWriter.release();
+                throw e;
+            }
+        }
+    }
+
+    private void submit(Day day, int userId, Ballot ballot, long record, CompletableFuture<Void> saved) {
+        ballot.saved = saved;
+        // the writer thread completes the future and must not wait for the user lock
+        saved.whenCompleteAsync((result, failure) -> settle(day, userId, ballot, record, failure));
+    }
+
+    private void settle(Day day, int userId, Ballot ballot, long record, Throwable failure) {
+        synchronized (locks[userId & (LOCK_STRIPES - 1)]) {
+            voteJournal.persisted(day.date, record);
+            if (failure == null) {
+                ballot.previous = null;
+                return;
+            }
+            if (day != this.day) {
+                // reloaded from the database after the write failed
+                return;
+            }
+            if (day.ballots.get(userId) != ballot) {
+                // replaced by a later write of the user, which is rolled back instead
+                return;
+            }
+            // earlier writes not saved yet were replaced by this one in the writer and failed with it
+            Ballot restored = ballot.previous;
+            while (restored != null && (!restored.saved.isDone() || restored.saved.isCompletedExceptionally())) {
+                restored = restored.previous;
+            }
+            if (restored != null && restored.restaurantId != null && !day.restaurants.contains(restored.restaurantId)) {
+                // deleted together with its restaurant
+                restored = null;
+            }
+            Integer restoredRestaurantId = restored == null ? null : restored.restaurantId;
+            if (restored == null) {
+                day.ballots.remove(userId);
+            } else {
+                day.ballots.put(userId, restored);
+            }
+            voteTally.move(day.date, ballot.restaurantId, restoredRestaurantId);
+            // the database already holds the restored state
+            voteJournal.persisted(day.date, restoredRestaurantId == null ?
+                    voteJournal.appendRemoval(day.date, dateTimeFactory.getCurrentTime(), userId) :
+                    voteJournal.append(day.date, restored.time, userId, restoredRestaurantId));
+            log.warn("vote of user {} for {} is rolled back: {}", userId, day.date, failure.toString());
+        }
+    }
+
+    /**
+     * Forgets the votes for a deleted restaurant, holding up votes meanwhile. The accepted writes are flushed first:
+     * a saved vote for the restaurant is deleted with it, a failed one gives way to the user's last saved vote.
+     */
+    public synchronized void removeRestaurant(int restaurantId) {
+        holdingLocks(0, () -> {
+            voteBatchWriter.flush();
+            Day current = day;
+            if (current != null) {
+                current.restaurants.remove(restaurantId);
+                current.ballots.forEach((userId, ballot) -> {
+                    if (!Integer.valueOf(restaurantId).equals(ballot.restaurantId)) {
+                        return;
+                    }
+                    Ballot saved = ballot;
+                    while (saved != null && (!saved.saved.isDone() || saved.saved.isCompletedExceptionally())) {
+                        saved = saved.previous;
+                    }
+                    if (saved == null || Integer.valueOf(restaurantId).equals(saved.restaurantId)) {
+                        current.ballots.remove(userId);
+                    } else {
+                        current.ballots.put(userId, saved);
+                        voteTally.move(current.date, null, saved.restaurantId);
+                    }
+                });
+            }
+            voteTally.removeRestaurant(restaurantId);
+        });
+    }
+
+    /**
+     * Forgets today's votes and all counted dates, they are loaded again when needed.
+     */
+    public synchronized void reset() {
+        day = null;
+        voteTally.clear();
+    }
+
+    /**
+     * Loads today's votes again once the database is changed past the ledger, e.g. by an import.
+     * Votes are held up meanwhile, and the ones already accepted are saved before loading.
+     */
+    public synchronized void reload() {
+        holdingLocks(0, () -> {
+            voteBatchWriter.flush();
+            day = load(dateTimeFactory.getCurrentDate());
+        });
+        log.info("vote ledger reloaded for {}", day.date);
+    }
+
+    private void holdingLocks(int stripe, Runnable action) {
+        if (stripe == LOCK_STRIPES) {
+            action.run();
+            return;
+        }
+        synchronized (locks[stripe]) {
+            holdingLocks(stripe + 1, action);
+        }
+    }
+
+    private Day current() {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        Day current = day;
+        if (current != null && current.date.equals(today)) {
+            return current;
+        }
+        synchronized (this) {
+            if (day == null || !day.date.equals(today)) {
+                day = load(today);
+                log.info("vote ledger loaded for {}", today);
+            }
+            return day;
+        }
+    }
+
+    private Day load(LocalDate date) {
+        Day loaded = new Day(date);
+        loaded.restaurants.addAll(restaurantRepository.getAllIds());
+        Map<Integer, Integer> votesCount = new HashMap<>();
+        for (Object[] row : voteRepository.getBallotsByDate(date)) {
+            int restaurantId = (Integer) row[1];
+            Ballot ballot = new Ballot((Integer) row[3], restaurantId, (LocalTime) row[2], null);
+            ballot.saved = CompletableFuture.completedFuture(null);
+            loaded.ballots.put((Integer) row[0], ballot);
+            votesCount.merge(restaurantId, 1, Integer::sum);
+        }
+        voteTally.seed(date, votesCount);
+        return loaded;
+    }
+
+    private class Day {
+        private final LocalDate date;
+        private final Map<Integer, Ballot> ballots = new ConcurrentHashMap<>();
+        private final Set<Integer> restaurants = ConcurrentHashMap.newKeySet();
+
+        private Day(LocalDate date) {
+            this.date = date;
+        }
+
+        private void checkRestaurant(int restaurantId) {
+            if (!restaurants.contains(restaurantId)) {
+                checkNotFoundWithId(restaurantRepository.existsById(restaurantId), restaurantId);
+                restaurants.add(restaurantId);
+            }
+        }
+    }
+
+    public static class AcceptedVote {
+        private final int id;
+        private final CompletableFuture<Void> saved;
+
+        AcceptedVote(int id, CompletableFuture<Void> saved) {
+            this.id = id;
+            this.saved = saved;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return future completed when the vote is saved
+         */
+        public CompletableFuture<Void> getSaved() {
+            return saved;
+        }
+    }
+
+    private static class Ballot {
+        private final int id;
+        // null once the vote is removed
+        private final Integer restaurantId;
+        private final LocalTime time;
+        // guarded by the user lock: the ballot to roll back to, kept until this one is saved
+        private Ballot previous;
+        private CompletableFuture<Void> saved;
+
+        private Ballot(int id, Integer restaurantId, LocalTime time, Ballot previous) {
+            this.id = id;
+            this.restaurantId = restaurantId;
+            this.time = time;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo.Status;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receipts of votes accepted for asynchronous saving. A receipt is kept until some time after its vote is saved.
+ */
+@Component
+public class VoteReceipts {
+    private static final long KEEP_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final long PURGE_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<Integer, Receipt> receipts = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong lastPurge = new AtomicLong(System.nanoTime());
+
+    public VoteReceiptTo issue(int userId, int restaurantId, LocalDate date, LocalTime time, CompletableFuture<Void> saved) {
+        purgeExpired();
+        Receipt receipt = new Receipt(sequence.incrementAndGet(), userId, restaurantId, date, time);
+        receipts.put(receipt.id, receipt);
+        saved.whenComplete((result, failure) -> receipt.complete(failure == null ? Status.SAVED : Status.FAILED));
+        return receipt.asTo();
+    }
+
+    public VoteReceiptTo get(int id, int userId) {
+        Receipt receipt = receipts.get(id);
+        return receipt == null || receipt.userId != userId ? null : receipt.asTo();
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        long last = lastPurge.get();
+        if (now - last > PURGE_PERIOD_NANOS && lastPurge.compareAndSet(last, now)) {
+            receipts.values().removeIf(receipt -> receipt.status != Status.PENDING && now - receipt.completedNanos > KEEP_NANOS);
+        }
+    }
+
+    private static class Receipt {
+        private final int id;
+        private final int userId;
+        private final int restaurantId;
+        private final LocalDate date;
+        private final LocalTime time;
+        private volatile Status status = Status.PENDING;
+        private volatile long completedNanos;
+
+        private Receipt(int id, int userId, int restaurantId, LocalDate date, LocalTime time) {
+            this.id = id;
+            this.userId = userId;
+            this.restaurantId = restaurantId;
+            this.date = date;
+            this.time = time;
+        }
+
+        private void complete(Status status) {
+            completedNanos = System.nanoTime();
+            this.status = status;
+        }
+
+        private VoteReceiptTo asTo() {
+            return new VoteReceiptTo(id, status, date, time, restaurantId);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.proshkina.restaurantvoting.service.vote;
 
 import ru.proshkina.restaurantvoting.model.Vote;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -9,6 +10,10 @@ public interface VoteService {
 
     Vote createOrUpdate(Vote vote, int userId, int restaurantId);
 
+    VoteReceiptTo submit(int userId, int restaurantId);
+
+    VoteReceiptTo getReceipt(int id, int userId);
+
     void delete(int id, int userId);
 
     Vote get(int id, int userId);
@@ -1,18 +1,21 @@
 package ru.proshkina.restaurantvoting.service.vote;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.model.Restaurant;
 import ru.proshkina.restaurantvoting.model.Vote;
-import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
-import ru.proshkina.restaurantvoting.repository.CrudUserRepository;
 import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo;
 import ru.proshkina.restaurantvoting.util.exception.VotingTimeIsOutException;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFound;
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFoundWithId;
@@ -21,44 +24,92 @@ import static ru.proshkina.restaurantvoting.util.ValidationUtil.checkNotFoundWit
 public class VoteServiceImpl implements VoteService {
 
     private final CrudVoteRepository voteRepository;
-    private final CrudRestaurantRepository restaurantRepository;
-    private final CrudUserRepository userRepository;
     private final DateTimeFactory dateTimeFactory;
+    private final VoteLedger voteLedger;
+    private final VoteBatchWriter voteBatchWriter;
+    private final VoteReceipts voteReceipts;
+    private final RestaurantService restaurantService;
+    private final boolean groupCommit;
 
     public VoteServiceImpl(CrudVoteRepository voteRepository,
-                           CrudRestaurantRepository restaurantRepository,
-                           CrudUserRepository userRepository,
-                           DateTimeFactory dateTimeFactory) {
+                           DateTimeFactory dateTimeFactory,
+                           VoteLedger voteLedger,
+                           VoteBatchWriter voteBatchWriter,
+                           VoteReceipts voteReceipts,
+                           RestaurantService restaurantService,
+                           @Value("${vote.groupCommit}") boolean groupCommit) {
         this.voteRepository = voteRepository;
-        this.restaurantRepository = restaurantRepository;
-        this.userRepository = userRepository;
         this.dateTimeFactory = dateTimeFactory;
+        this.voteLedger = voteLedger;
+        this.voteBatchWriter = voteBatchWriter;
+        this.voteReceipts = voteReceipts;
+        this.restaurantService = restaurantService;
+        this.groupCommit = groupCommit;
     }
 
-    @Transactional
     @Override
     public Vote createOrUpdate(Vote vote, int userId, int restaurantId) {
         Assert.notNull(vote, "vote must not be null");
         LocalDate currentDate = dateTimeFactory.getCurrentDate();
-        Vote existVote = voteRepository.findAllByDateAndUser_Id(currentDate, userId);
-        LocalTime timeLimit = dateTimeFactory.getTimeLimit();
+        LocalTime currentTime = checkVotingTime();
+        VoteLedger.AcceptedVote accepted = voteLedger.vote(userId, restaurantId, currentTime);
+        if (groupCommit) {
+            join(accepted.getSaved());
+        }
+        vote.setId(accepted.getId());
+        vote.setTime(currentTime);
+        vote.setDate(currentDate);
+        vote.setRestaurant(new Restaurant(restaurantId, null));
+        return vote;
+    }
+
+    @Override
+    public VoteReceiptTo submit(int userId, int restaurantId) {
+        LocalDate currentDate = dateTimeFactory.getCurrentDate();
+        LocalTime currentTime = checkVotingTime();
+        return voteReceipts.issue(userId, restaurantId, currentDate, currentTime,
+                voteLedger.vote(userId, restaurantId, currentTime).getSaved());
+    }
+
+    @Override
+    public VoteReceiptTo getReceipt(int id, int userId) {
+        return checkNotFoundWithId(voteReceipts.get(id, userId), id);
+    }
+
+    private LocalTime checkVotingTime() {
         LocalTime currentTime = dateTimeFactory.getCurrentTime();
-        if (currentTime.isAfter(timeLimit)) {
+        if (currentTime.isAfter(dateTimeFactory.getTimeLimit())) {
             throw new VotingTimeIsOutException("Time to vote is out!");
         }
-        if (existVote != null) {
-            voteRepository.delete(existVote.getId(), userId);
+        return currentTime;
+    }
+
+    private void join(CompletableFuture<Void> saved) {
+        try {
+            saved.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
         }
-        vote.setTime(currentTime);
-        vote.setDate(currentDate);
-        vote.setUser(userRepository.getOne(userId));
-        vote.setRestaurant(restaurantRepository.getOne(restaurantId));
-        return voteRepository.save(vote);
     }
 
     @Override
     public void delete(int id, int userId) {
-        checkNotFoundWithId(voteRepository.delete(id, userId) != 0, id);
+        // today's vote is removed through the ledger, after the writes of the user queued before
+        CompletableFuture<Void> removed = voteLedger.remove(userId, id);
+        LocalDate date;
+        if (removed != null) {
+            if (groupCommit) {
+                join(removed);
+            }
+            date = voteLedger.getDate();
+        } else {
+            // nothing queued may bring the vote back once it is deleted
+            voteBatchWriter.flush();
+            date = get(id, userId).getDate();
+            checkNotFoundWithId(voteRepository.delete(id, userId) != 0, id);
+        }
+        // a deletion after the deadline changes the sealed results
+        restaurantService.refreshVotesResults(date);
     }
 
     @Override
@@ -0,0 +1,121 @@
+package ru.proshkina.restaurantvoting.service.vote;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of votes per restaurant of the voting day of {@link VoteLedger}, the only writer of today's votes:
+ * seeded by the ledger when it loads the day and kept up to date by the changes of votes.
+ * Other dates are counted by the database when asked for, their results are cached by VoteResultsCache.
+ * <p>
+ * With vote.tally.inMemory=false nothing is kept and every date is counted by the database when asked for.
+ * This does not make several instances consistent: the ledger, which accepts today's votes, and the result caches
+ * are kept per instance anyway.
+ */
+@Component
+public class VoteTally {
+    private final CrudVoteRepository voteRepository;
+    private final boolean inMemory;
+
+    private final LongAdder changes = new LongAdder();
+    private volatile Tally today;
+
+    public VoteTally(CrudVoteRepository voteRepository, @Value("${vote.tally.inMemory}") boolean inMemory) {
+        this.voteRepository = voteRepository;
+        this.inMemory = inMemory;
+    }
+
+    public Map<Integer, Integer> get(LocalDate date) {
+        Map<Integer, Integer> votesCount = new HashMap<>();
+        Tally tally = today;
+        if (tally != null && tally.date.equals(date)) {
+            tally.counters.forEach((restaurantId, counter) -> votesCount.put(restaurantId, counter.intValue()));
+            return votesCount;
+        }
+        voteRepository.countByRestaurantForDate(date)
+                .forEach(row -> votesCount.put((Integer) row[0], ((Long) row[1]).intValue()));
+        return votesCount;
+    }
+
+    /**
+     * A vote moves from one restaurant to another; null stands for no vote.
+     * Inside a transaction the move is applied once the transaction commits.
+     */
+    public void move(LocalDate date, Integer fromRestaurantId, Integer toRestaurantId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    apply(date, fromRestaurantId, toRestaurantId);
+                }
+            });
+        } else {
+            apply(date, fromRestaurantId, toRestaurantId);
+        }
+    }
+
+    void seed(LocalDate date, Map<Integer, Integer> votesCount) {
+        if (!inMemory) {
+            return;
+        }
+        Tally tally = new Tally(date);
+        votesCount.forEach((restaurantId, count) -> tally.counter(restaurantId).add(count));
+        today = tally;
+        changes.increment();
+    }
+
+    public void removeRestaurant(int restaurantId) {
+        Tally tally = today;
+        if (tally != null) {
+            tally.counters.remove(restaurantId);
+        }
+        changes.increment();
+    }
+
+    public void clear() {
+        today = null;
+        changes.increment();
+    }
+
+    /**
+     * Grows with every change of the counts: the same value read twice means nothing changed in between.
+     */
+    public long getChanges() {
+        return changes.sum();
+    }
+
+    private void apply(LocalDate date, Integer fromRestaurantId, Integer toRestaurantId) {
+        Tally tally = today;
+        if (tally != null && tally.date.equals(date)) {
+            if (fromRestaurantId != null) {
+                tally.counter(fromRestaurantId).decrement();
+            }
+            if (toRestaurantId != null) {
+                tally.counter(toRestaurantId).increment();
+            }
+        }
+        changes.increment();
+    }
+
+    private static class Tally {
+        private final LocalDate date;
+        private final Map<Integer, LongAdder> counters = new ConcurrentHashMap<>();
+
+        private Tally(LocalDate date) {
+            this.date = date;
+        }
+
+        private LongAdder counter(int restaurantId) {
+            return counters.computeIfAbsent(restaurantId, id -> new LongAdder());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.proshkina.restaurantvoting.to;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+public class PopularityTo extends BaseTo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+
+    private LocalDate start;
+
+    private int votesCount;
+
+    private int wins;
+
+    public PopularityTo() {
+    }
+
+    public PopularityTo(Integer id, String name, LocalDate start, int votesCount, int wins) {
+        super(id);
+        this.name = name;
+        this.start = start;
+        this.votesCount = votesCount;
+        this.wins = wins;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDate getStart() {
+        return start;
+    }
+
+    public int getVotesCount() {
+        return votesCount;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setStart(LocalDate start) {
+        this.start = start;
+    }
+
+    public void setVotesCount(int votesCount) {
+        this.votesCount = votesCount;
+    }
+
+    public void setWins(int wins) {
+        this.wins = wins;
+    }
+
+    @Override
+    public String toString() {
+        return "PopularityTo{" +
+                "name='" + name + '\'' +
+                ", start=" + start +
+                ", votesCount=" + votesCount +
+                ", wins=" + wins +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package ru.proshkina.restaurantvoting.to;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+public class PriceStatsTo extends BaseTo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private LocalDate date;
+
+    private int dishesCount;
+
+    private int minPriceInCents;
+
+    private double avgPriceInCents;
+
+    private int maxPriceInCents;
+
+    public PriceStatsTo() {
+    }
+
+    public PriceStatsTo(Integer id, LocalDate date, int dishesCount, int minPriceInCents, double avgPriceInCents, int maxPriceInCents) {
+        super(id);
+        this.date = date;
+        this.dishesCount = dishesCount;
+        this.minPriceInCents = minPriceInCents;
+        this.avgPriceInCents = avgPriceInCents;
+        this.maxPriceInCents = maxPriceInCents;
+    }
+
+    // JPQL constructor expression: COUNT is Long, AVG is Double
+    public PriceStatsTo(Integer id, LocalDate date, Long dishesCount, Integer minPriceInCents, Double avgPriceInCents, Integer maxPriceInCents) {
+        this(id, date, dishesCount.intValue(), minPriceInCents, avgPriceInCents, maxPriceInCents);
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getDishesCount() {
+        return dishesCount;
+    }
+
+    public int getMinPriceInCents() {
+        return minPriceInCents;
+    }
+
+    public double getAvgPriceInCents() {
+        return avgPriceInCents;
+    }
+
+    public int getMaxPriceInCents() {
+        return maxPriceInCents;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public void setDishesCount(int dishesCount) {
+        this.dishesCount = dishesCount;
+    }
+
+    public void setMinPriceInCents(int minPriceInCents) {
+        this.minPriceInCents = minPriceInCents;
+    }
+
+    public void setAvgPriceInCents(double avgPriceInCents) {
+        this.avgPriceInCents = avgPriceInCents;
+    }
+
+    public void setMaxPriceInCents(int maxPriceInCents) {
+        this.maxPriceInCents = maxPriceInCents;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceStatsTo{" +
+                "date=" + date +
+                ", dishesCount=" + dishesCount +
+                ", minPriceInCents=" + minPriceInCents +
+                ", avgPriceInCents=" + avgPriceInCents +
+                ", maxPriceInCents=" + maxPriceInCents +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package ru.proshkina.restaurantvoting.to;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VoteImportTo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int imported;
+
+    private int rejected;
+
+    private List<String> errors = new ArrayList<>();
+
+    public VoteImportTo() {
+    }
+
+    public VoteImportTo(int imported, int rejected, List<String> errors) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.errors = errors;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public void setRejected(int rejected) {
+        this.rejected = rejected;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+
+    @Override
+    public String toString() {
+        return "VoteImportTo{" +
+                "imported=" + imported +
+                ", rejected=" + rejected +
+                ", errors=" + errors +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package ru.proshkina.restaurantvoting.to;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public class VoteReceiptTo extends BaseTo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        PENDING,
+        SAVED,
+        FAILED
+    }
+
+    private Status status;
+
+    private LocalDate date;
+
+    private LocalTime time;
+
+    private Integer restaurantId;
+
+    public VoteReceiptTo() {
+    }
+
+    public VoteReceiptTo(Integer id, Status status, LocalDate date, LocalTime time, Integer restaurantId) {
+        super(id);
+        this.status = status;
+        this.date = date;
+        this.time = time;
+        this.restaurantId = restaurantId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public LocalTime getTime() {
+        return time;
+    }
+
+    public Integer getRestaurantId() {
+        return restaurantId;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public void setTime(LocalTime time) {
+        this.time = time;
+    }
+
+    public void setRestaurantId(Integer restaurantId) {
+        this.restaurantId = restaurantId;
+    }
+
+    @Override
+    public String toString() {
+        return "VoteReceiptTo{" +
+                "status=" + status +
+                ", date=" + date +
+                ", time=" + time +
+                ", restaurantId=" + restaurantId +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -5,12 +5,20 @@ import org.slf4j.Logger;
 import ru.proshkina.restaurantvoting.HasId;
 import ru.proshkina.restaurantvoting.model.AbstractBaseEntity;
 import ru.proshkina.restaurantvoting.util.exception.ErrorType;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
 import ru.proshkina.restaurantvoting.util.exception.NotFoundException;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class ValidationUtil {
 
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
     private ValidationUtil() {
     }
 
@@ -49,6 +57,19 @@ public class ValidationUtil {
         }
     }
 
+    /**
+     * Validates beans written without JPA, which validates entities on save.
+     */
+    public static <T> void validate(T bean, String description) {
+        Set<ConstraintViolation<T>> violations = VALIDATOR.validate(bean);
+        if (!violations.isEmpty()) {
+            throw new IllegalRequestDataException(description + ": " + violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
     public static void assureIdConsistent(HasId bean, int id) {
 //      http://stackoverflow.com/a/32728226/548473
         if (bean.isNew()) {
@@ -6,7 +6,8 @@ public enum ErrorType {
     VOTING_TIME_IS_OUT("error.votingTimeIsOut"),
     DATA_ERROR("error.dataError"),
     VALIDATION_ERROR("error.validationError"),
-    WRONG_REQUEST("error.wrongRequest");
+    WRONG_REQUEST("error.wrongRequest"),
+    TOO_MANY_REQUESTS("error.tooManyRequests");
 
     private final String errorCode;
 
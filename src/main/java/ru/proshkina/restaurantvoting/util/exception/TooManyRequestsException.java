@@ -0,0 +1,18 @@
+package ru.proshkina.restaurantvoting.util.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class TooManyRequestsException extends ApplicationException {
+    public static final String TOO_MANY_REQUESTS_EXCEPTION = "exception.common.tooManyRequests";
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(long retryAfterSeconds) {
+        super(ErrorType.TOO_MANY_REQUESTS, TOO_MANY_REQUESTS_EXCEPTION, HttpStatus.TOO_MANY_REQUESTS, String.valueOf(retryAfterSeconds));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.proshkina.restaurantvoting.model.ResultsPeriod;
+import ru.proshkina.restaurantvoting.service.analytics.AnalyticsService;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
+import ru.proshkina.restaurantvoting.web.json.JsonArrayWriter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping(value = AnalyticsController.REST_URL, produces = MediaType.APPLICATION_JSON_VALUE)
+public class AnalyticsController {
+    static final String REST_URL = "/rest/admin/analytics";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AnalyticsService service;
+
+    @Autowired
+    public AnalyticsController(AnalyticsService service) {
+        this.service = service;
+    }
+
+    @GetMapping("/popularity")
+    public List<PopularityTo> getPopularity(@RequestParam("period") ResultsPeriod period,
+                                            @RequestParam("from") LocalDate from,
+                                            @RequestParam("to") LocalDate to) {
+        log.info("get popularity per {} from {} to {}", period, from, to);
+        return service.getPopularity(period, from, to);
+    }
+
+    @GetMapping("/totals")
+    public List<PopularityTo> getTotals(@RequestParam("from") LocalDate from, @RequestParam("to") LocalDate to) {
+        log.info("get totals from {} to {}", from, to);
+        return service.getTotals(from, to);
+    }
+
+    // written while read from the database, the range may span years of menus
+    @GetMapping("/prices")
+    public void getPriceStats(@RequestParam("from") LocalDate from, @RequestParam("to") LocalDate to,
+                              HttpServletResponse response) throws IOException {
+        log.info("get price statistics from {} to {}", from, to);
+        JsonArrayWriter<PriceStatsTo> writer = new JsonArrayWriter<>(response);
+        service.streamPriceStats(from, to, writer);
+        writer.finish();
+    }
+}
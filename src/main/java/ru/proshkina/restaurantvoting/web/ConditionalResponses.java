@@ -0,0 +1,38 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+import ru.proshkina.restaurantvoting.service.DataVersions.Version;
+
+import java.util.function.Supplier;
+
+/**
+ * Conditional GET by the version of the data: ETag and Last-Modified come from the version,
+ * a client with the current version gets 304 before the data is read.
+ */
+@Component
+public class ConditionalResponses {
+
+    public <T> ResponseEntity<T> get(WebRequest request, Version version, Supplier<T> body) {
+        // sets ETag and Last-Modified in both cases
+        if (request.checkNotModified(version.getTag(), version.getLastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.CACHE_CONTROL, cacheControl(false)).build();
+        }
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, cacheControl(false)).body(body.get());
+    }
+
+    /**
+     * Responses are stored by clients and revalidated on every use: data of past dates change too,
+     * e.g. menus are edited or copied and votes are deleted or imported.
+     *
+     * @param shared whether the response is the same for every user
+     */
+    public String cacheControl(boolean shared) {
+        CacheControl cacheControl = CacheControl.noCache();
+        return (shared ? cacheControl.cachePublic() : cacheControl.cachePrivate()).getHeaderValue();
+    }
+}
@@ -7,8 +7,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import ru.proshkina.restaurantvoting.model.Dish;
+import ru.proshkina.restaurantvoting.service.DataVersions;
 import ru.proshkina.restaurantvoting.service.dish.DishService;
 
 import javax.validation.Valid;
@@ -26,16 +28,20 @@ public class DishController {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private DishService service;
+    private DataVersions dataVersions;
+    private ConditionalResponses conditionalResponses;
 
     @Autowired
-    public DishController(DishService service) {
+    public DishController(DishService service, DataVersions dataVersions, ConditionalResponses conditionalResponses) {
         this.service = service;
+        this.dataVersions = dataVersions;
+        this.conditionalResponses = conditionalResponses;
     }
 
     @GetMapping("/{restaurantId}/dishes/{id}")
-    public Dish get(@PathVariable("id") int id, @PathVariable("restaurantId") int restaurantId) {
+    public ResponseEntity<Dish> get(@PathVariable("id") int id, @PathVariable("restaurantId") int restaurantId, WebRequest request) {
         log.info("get dish {}", id);
-        return service.get(id, restaurantId);
+        return conditionalResponses.get(request, dataVersions.get(DataVersions.DISHES, restaurantId), () -> service.get(id, restaurantId));
     }
 
     @DeleteMapping("/{restaurantId}/dishes/{id}")
@@ -67,24 +73,49 @@ public class DishController {
         log.info("update dish {}", id);
     }
 
+    @PutMapping(value = "/{restaurantId}/menus/{date}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void replaceMenu(@RequestBody List<Dish> dishes, @PathVariable("restaurantId") int restaurantId, @PathVariable("date") LocalDate date) {
+        log.info("replace menu of restaurant {} for {} with {} dishes", restaurantId, date, dishes.size());
+        service.replaceMenu(restaurantId, date, dishes);
+    }
+
+    @PostMapping("/{restaurantId}/menus/{date}/copy")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void copyMenu(@PathVariable("restaurantId") int restaurantId, @PathVariable("date") LocalDate date,
+                         @RequestParam("to") List<LocalDate> to) {
+        log.info("copy menu of restaurant {} from {} to {}", restaurantId, date, to);
+        service.copyMenu(restaurantId, date, to);
+    }
+
+    @PostMapping("/menus/{date}/copy")
+    @ResponseStatus(value = HttpStatus.NO_CONTENT)
+    public void copyMenus(@PathVariable("date") LocalDate date, @RequestParam("to") List<LocalDate> to) {
+        log.info("copy menus from {} to {}", date, to);
+        service.copyMenu(null, date, to);
+    }
+
     @GetMapping("/dishes")
-    public List<Dish> getAll(@RequestParam(value = "date", required = false) LocalDate date) {
+    public ResponseEntity<List<Dish>> getAll(@RequestParam(value = "date", required = false) LocalDate date, WebRequest request) {
+        DataVersions.Version version = dataVersions.get(DataVersions.DISHES);
         if (date == null) {
             log.info("get all dishes");
-            return service.getAll();
+            return conditionalResponses.get(request, version, service::getAll);
         }
         log.info("get all dishes by date {}" + date);
-        return service.getAllForDate(date);
+        return conditionalResponses.get(request, version, () -> service.getAllForDate(date));
     }
 
     @GetMapping("/{restaurantId}/dishes")
-    public List<Dish> getAllByRestaurant(@PathVariable("restaurantId") int restaurantId, @RequestParam(value = "date", required = false) LocalDate date) {
+    public ResponseEntity<List<Dish>> getAllByRestaurant(@PathVariable("restaurantId") int restaurantId, @RequestParam(value = "date", required = false) LocalDate date,
+                                                         WebRequest request) {
+        DataVersions.Version version = dataVersions.get(DataVersions.DISHES, restaurantId);
         if (date == null) {
             log.info("get all dishes by restaurant {}", restaurantId);
-            return service.getAllByRestaurant(restaurantId);
+            return conditionalResponses.get(request, version, () -> service.getAllByRestaurant(restaurantId));
         } else {
             log.info("get all dishes by restaurant {}", restaurantId);
-            return service.getAllByRestaurantAndDate(restaurantId, date);
+            return conditionalResponses.get(request, version, () -> service.getAllByRestaurantAndDate(restaurantId, date));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
+
+import java.util.function.Supplier;
+
+/**
+ * Results of requests sent with an Idempotency-Key header, kept in the size-bounded,
+ * expiring "idempotency" cache. A retry with the same key gets the original result.
+ */
+@Component
+public class IdempotentRequests {
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache cache;
+
+    @Autowired
+    public IdempotentRequests(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache("idempotency");
+    }
+
+    /**
+     * Runs the request once per user and key; concurrent retries wait for the first one.
+     * Failed requests are not remembered.
+     */
+    public <T> T execute(int userId, String key, Supplier<T> request) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalRequestDataException(IDEMPOTENCY_KEY + " must be 1 to " + MAX_KEY_LENGTH + " characters long");
+        }
+        try {
+            return cache.get(userId + ":" + key, request::get);
+        } catch (Cache.ValueRetrievalException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.web.json.JsonUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Menus by date serialized once into the "menuResponses" cache, evicted together with the "menu" cache.
+ * Every body comes as is and gzipped, each with its own strong ETag.
+ */
+@Component
+public class MenuResponses {
+    private final RestaurantService restaurantService;
+    private final Cache cache;
+
+    @Autowired
+    public MenuResponses(RestaurantService restaurantService, CacheManager cacheManager) {
+        this.restaurantService = restaurantService;
+        this.cache = cacheManager.getCache("menuResponses");
+    }
+
+    public Body get(LocalDate date, boolean gzip) {
+        MenuResponse response = cache.get(date, () -> serialize(date));
+        return gzip ? response.gzipped : response.plain;
+    }
+
+    /**
+     * @return whether the Accept-Encoding header accepts gzip, by name or by "*", with a q-value above 0
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase();
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = quality(params);
+            } else if (name.equals("*")) {
+                any = quality(params);
+            }
+        }
+        // the coding named explicitly takes precedence over "*"
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private MenuResponse serialize(LocalDate date) {
+        byte[] json = JsonUtil.writeValue(restaurantService.getAllWithDishesByDate(date)).getBytes(StandardCharsets.UTF_8);
+        String hash = DigestUtils.md5DigestAsHex(json);
+        return new MenuResponse(new Body(json, '"' + hash + '"'), new Body(gzip(json), "\"" + hash + "-gzip\""));
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static class Body implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] content;
+        private final String etag;
+
+        private Body(byte[] content, String etag) {
+            this.content = content;
+            this.etag = etag;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static class MenuResponse implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Body plain;
+        private final Body gzipped;
+
+        private MenuResponse(Body plain, Body gzipped) {
+            this.plain = plain;
+            this.gzipped = gzipped;
+        }
+    }
+}
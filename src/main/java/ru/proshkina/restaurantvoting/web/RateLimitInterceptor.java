@@ -0,0 +1,116 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import ru.proshkina.restaurantvoting.AuthorizedUser;
+import ru.proshkina.restaurantvoting.util.exception.TooManyRequestsException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per client: the authenticated user id, or the remote address for anonymous requests.
+ * Mapped to URL patterns in spring-mvc.xml, every mapping with its own buckets.
+ * At most maxClients buckets are kept: when all of them are busy, requests of new clients are rejected
+ * until idle buckets are purged.
+ */
+public class RateLimitInterceptor extends HandlerInterceptorAdapter {
+    private static final long PURGE_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long FULL_PURGE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxClients;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurge = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param capacity        requests a client may send at once
+     * @param refillPerSecond requests a client may send per second in the long run
+     * @param maxClients      clients tracked at once
+     */
+    public RateLimitInterceptor(int capacity, int refillPerSecond, int maxClients) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / refillPerSecond;
+        this.burstNanos = intervalNanos * capacity;
+        this.maxClients = maxClients;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long now = System.nanoTime();
+        purgeIdle(now, PURGE_PERIOD_NANOS);
+        String key = clientKey(request);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxClients) {
+                purgeIdle(now, FULL_PURGE_PERIOD_NANOS);
+                if (buckets.size() >= maxClients) {
+                    // every bucket is full again, and so purged, within the burst
+                    throw tooManyRequests(burstNanos);
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(now));
+        }
+        long waitNanos = bucket.tryConsume(now);
+        if (waitNanos > 0) {
+            throw tooManyRequests(waitNanos);
+        }
+        return true;
+    }
+
+    private static TooManyRequestsException tooManyRequests(long waitNanos) {
+        return new TooManyRequestsException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        Object principal = auth == null ? null : auth.getPrincipal();
+        return principal instanceof AuthorizedUser ? "user:" + ((AuthorizedUser) principal).getId() : "ip:" + request.getRemoteAddr();
+    }
+
+    // a bucket that has refilled completely is the same as a new one
+    private void purgeIdle(long now, long periodNanos) {
+        long last = lastPurge.get();
+        if (now - last > periodNanos && lastPurge.compareAndSet(last, now)) {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+    }
+
+    /**
+     * Lock-free bucket kept as the time at which it will be full again
+     * (generic cell rate algorithm): every request moves that time forward by one interval.
+     */
+    private class TokenBucket {
+        private final AtomicLong fullAt;
+
+        private TokenBucket(long now) {
+            this.fullAt = new AtomicLong(now);
+        }
+
+        /**
+         * @return 0 if a token is taken, otherwise nanoseconds to wait for the next one
+         */
+        private long tryConsume(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long wait = next - now - burstNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+}
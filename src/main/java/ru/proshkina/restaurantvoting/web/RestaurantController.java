@@ -7,12 +7,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import ru.proshkina.restaurantvoting.model.Restaurant;
+import ru.proshkina.restaurantvoting.service.DataVersions;
 import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.RestaurantTo;
 
 import javax.validation.Valid;
 import java.net.URI;
+import java.time.LocalDate;
 import java.util.List;
 
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.assureIdConsistent;
@@ -25,16 +29,20 @@ public class RestaurantController {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private RestaurantService service;
+    private DataVersions dataVersions;
+    private ConditionalResponses conditionalResponses;
 
     @Autowired
-    public RestaurantController(RestaurantService service) {
+    public RestaurantController(RestaurantService service, DataVersions dataVersions, ConditionalResponses conditionalResponses) {
         this.service = service;
+        this.dataVersions = dataVersions;
+        this.conditionalResponses = conditionalResponses;
     }
 
     @GetMapping("/{id}")
-    public Restaurant get(@PathVariable("id") int id) {
+    public ResponseEntity<Restaurant> get(@PathVariable("id") int id, WebRequest request) {
         log.info("get restaurant {}", id);
-        return service.get(id);
+        return conditionalResponses.get(request, dataVersions.get(DataVersions.RESTAURANTS), () -> service.get(id));
     }
 
     @DeleteMapping("/{id}")
@@ -68,8 +76,14 @@ public class RestaurantController {
     }
 
     @GetMapping
-    public List<Restaurant> getAll() {
+    public ResponseEntity<List<Restaurant>> getAll(WebRequest request) {
         log.info("get all restaurants");
-        return service.getAll();
+        return conditionalResponses.get(request, dataVersions.get(DataVersions.RESTAURANTS), service::getAll);
+    }
+
+    @PostMapping(value = "/votes/seal", params = {"date"})
+    public List<RestaurantTo> sealVotesResults(@RequestParam("date") LocalDate date) {
+        log.info("seal vote results for {}", date);
+        return service.sealVotesResults(date);
     }
 }
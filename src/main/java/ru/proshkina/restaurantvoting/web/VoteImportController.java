@@ -0,0 +1,43 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.proshkina.restaurantvoting.service.vote.VoteImporter;
+import ru.proshkina.restaurantvoting.service.vote.VoteImporter.Format;
+import ru.proshkina.restaurantvoting.to.VoteImportTo;
+
+import java.io.Reader;
+
+@RestController
+@RequestMapping(value = VoteImportController.REST_URL, produces = MediaType.APPLICATION_JSON_VALUE)
+public class VoteImportController {
+    static final String REST_URL = "/rest/admin/votes/import";
+    static final String NDJSON_VALUE = "application/x-ndjson";
+    static final String CSV_VALUE = "text/csv";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final VoteImporter voteImporter;
+
+    @Autowired
+    public VoteImportController(VoteImporter voteImporter) {
+        this.voteImporter = voteImporter;
+    }
+
+    @PostMapping(consumes = NDJSON_VALUE)
+    public VoteImportTo importNdjson(Reader body) {
+        log.info("import votes from NDJSON");
+        return voteImporter.importVotes(body, Format.NDJSON);
+    }
+
+    @PostMapping(consumes = CSV_VALUE)
+    public VoteImportTo importCsv(Reader body) {
+        log.info("import votes from CSV");
+        return voteImporter.importVotes(body, Format.CSV);
+    }
+}
@@ -0,0 +1,188 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.service.vote.VoteTally;
+import ru.proshkina.restaurantvoting.web.json.JsonUtil;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live results of today's voting for Server-Sent Events subscribers. Changes of the votes are coalesced:
+ * at most vote.results.pushesPerSecond times a second the results are computed and serialized once
+ * and the same event is handed to every subscriber.
+ * <p>
+ * The events are written by a pool of vote.results.senders threads, one event of a subscriber at a time:
+ * a slow subscriber skips to the latest results instead of holding up the others, as long as there are
+ * fewer slow subscribers than senders.
+ */
+@Component
+public class VoteResultsBroadcaster {
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final String EVENT_NAME = "results";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final RestaurantService restaurantService;
+    private final VoteTally voteTally;
+    private final DateTimeFactory dateTimeFactory;
+    private final int pushesPerSecond;
+    private final int senderThreads;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService broadcaster;
+    private ExecutorService senders;
+    private volatile Snapshot latest;
+
+    @Autowired
+    public VoteResultsBroadcaster(RestaurantService restaurantService,
+                                  VoteTally voteTally,
+                                  DateTimeFactory dateTimeFactory,
+                                  @Value("${vote.results.pushesPerSecond}") int pushesPerSecond,
+                                  @Value("${vote.results.senders}") int senderThreads) {
+        this.restaurantService = restaurantService;
+        this.voteTally = voteTally;
+        this.dateTimeFactory = dateTimeFactory;
+        this.pushesPerSecond = pushesPerSecond;
+        this.senderThreads = senderThreads;
+    }
+
+    @PostConstruct
+    void start() {
+        broadcaster = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vote-results-broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "vote-results-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMs = 1000 / pushesPerSecond;
+        broadcaster.scheduleWithFixedDelay(this::broadcastQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        broadcaster.shutdown();
+        senders.shutdown();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * The new subscriber gets the current results at once and then every change of them.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        // the last broadcast results, changes since then reach the new subscriber with the next broadcast
+        Snapshot current = latest;
+        if (current == null || !current.date.equals(dateTimeFactory.getCurrentDate())) {
+            current = compute();
+        }
+        if (send(emitter, current)) {
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    void broadcast() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Snapshot previous = latest;
+        if (previous != null && previous.changes == voteTally.getChanges() && previous.date.equals(dateTimeFactory.getCurrentDate())) {
+            return;
+        }
+        Snapshot current = compute();
+        latest = current;
+        subscribers.forEach(subscriber -> subscriber.push(current));
+    }
+
+    private Snapshot compute() {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        // read before counting: a vote arriving meanwhile is pushed with the next change
+        long changes = voteTally.getChanges();
+        return new Snapshot(today, changes, JsonUtil.writeValue(restaurantService.getAllWithVotesByDate(today)));
+    }
+
+    private static boolean send(SseEmitter emitter, Snapshot snapshot) {
+        try {
+            // already serialized JSON, written as is by the string converter
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(snapshot.json, MediaType.TEXT_PLAIN));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void broadcastQuietly() {
+        try {
+            broadcast();
+        } catch (Exception e) {
+            log.error("vote results broadcast failed", e);
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        // the results still to be sent, replaced by newer ones while the subscriber is busy
+        private final AtomicReference<Snapshot> pending = new AtomicReference<>();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void push(Snapshot snapshot) {
+            if (pending.getAndSet(snapshot) == null) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            Snapshot snapshot = pending.get();
+            while (send(emitter, snapshot)) {
+                if (pending.compareAndSet(snapshot, null)) {
+                    return;
+                }
+                snapshot = pending.get();
+            }
+            // failed, nothing is sent to it anymore
+            subscribers.remove(this);
+        }
+    }
+
+    private static class Snapshot {
+        private final LocalDate date;
+        private final long changes;
+        private final String json;
+
+        private Snapshot(LocalDate date, long changes, String json) {
+            this.date = date;
+            this.changes = changes;
+            this.json = json;
+        }
+    }
+}
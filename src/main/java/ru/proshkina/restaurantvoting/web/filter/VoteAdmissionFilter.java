@@ -0,0 +1,84 @@
+package ru.proshkina.restaurantvoting.web.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.LocaleResolver;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.util.exception.ErrorInfo;
+import ru.proshkina.restaurantvoting.util.exception.ErrorType;
+import ru.proshkina.restaurantvoting.web.MessageUtil;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static ru.proshkina.restaurantvoting.util.exception.VotingTimeIsOutException.VOTING_TIME_IS_OUT_EXCEPTION;
+import static ru.proshkina.restaurantvoting.web.json.JacksonObjectMapper.getMapper;
+
+/**
+ * Rejects late and malformed votes before authentication, body parsing and validation.
+ * Registered in web.xml ahead of springSecurityFilterChain.
+ */
+@Component
+public class VoteAdmissionFilter extends OncePerRequestFilter {
+    private static final Pattern VOTE_PATH = Pattern.compile("/rest/profile/restaurants/([^/]+)/votes(/async)?/?");
+    private static final Pattern DUPLICATE_SLASHES = Pattern.compile("/{2,}");
+    private static final Pattern ID = Pattern.compile("\\d{1,9}");
+    private static final long MAX_CONTENT_LENGTH = 4096;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DateTimeFactory dateTimeFactory;
+    private final MessageUtil messageUtil;
+    private final LocaleResolver localeResolver;
+
+    @Autowired
+    public VoteAdmissionFilter(DateTimeFactory dateTimeFactory, MessageUtil messageUtil, LocaleResolver localeResolver) {
+        this.dateTimeFactory = dateTimeFactory;
+        this.messageUtil = messageUtil;
+        this.localeResolver = localeResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = VOTE_PATH.matcher(DUPLICATE_SLASHES.matcher(path).replaceAll("/"));
+        if (matcher.matches()) {
+            if (dateTimeFactory.getCurrentTime().isAfter(dateTimeFactory.getTimeLimit())) {
+                reject(request, response, ErrorType.VOTING_TIME_IS_OUT, VOTING_TIME_IS_OUT_EXCEPTION);
+                return;
+            }
+            if (!ID.matcher(matcher.group(1)).matches() || request.getContentLengthLong() > MAX_CONTENT_LENGTH) {
+                reject(request, response, ErrorType.WRONG_REQUEST, ErrorType.WRONG_REQUEST.getErrorCode());
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, ErrorType errorType, String msgCode) throws IOException {
+        log.debug("{} at request {}: rejected before authentication", errorType, request.getRequestURL());
+        Locale locale = localeResolver.resolveLocale(request);
+        ErrorInfo errorInfo = new ErrorInfo(request.getRequestURL(), errorType,
+                messageUtil.getMessage(errorType.getErrorCode(), locale), messageUtil.getMessage(msgCode, locale));
+        response.setStatus(HttpStatus.UNPROCESSABLE_ENTITY.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        getMapper().writeValue(response.getOutputStream(), errorInfo);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.proshkina.restaurantvoting.web.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import static ru.proshkina.restaurantvoting.web.json.JacksonObjectMapper.getMapper;
+
+/**
+ * Writes a JSON array to the response element by element. Nothing is written before the first element,
+ * so a request failing before it still gets a regular error response.
+ */
+public class JsonArrayWriter<T> implements Consumer<T> {
+    private final HttpServletResponse response;
+    private JsonGenerator generator;
+
+    public JsonArrayWriter(HttpServletResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void accept(T element) {
+        try {
+            start();
+            generator.writeObject(element);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        start();
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    private void start() throws IOException {
+        if (generator == null) {
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            generator = getMapper().getFactory().createGenerator(response.getOutputStream());
+            generator.writeStartArray();
+        }
+    }
+}
@@ -1,27 +1,41 @@
 package ru.proshkina.restaurantvoting.web.user;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import ru.proshkina.restaurantvoting.AuthorizedUser;
-import ru.proshkina.restaurantvoting.model.Restaurant;
+import ru.proshkina.restaurantvoting.model.Dish;
 import ru.proshkina.restaurantvoting.model.User;
 import ru.proshkina.restaurantvoting.model.Vote;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.service.DataVersions;
+import ru.proshkina.restaurantvoting.service.dish.DishService;
 import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
 import ru.proshkina.restaurantvoting.service.vote.VoteService;
+import ru.proshkina.restaurantvoting.service.vote.VoteTally;
 import ru.proshkina.restaurantvoting.to.RestaurantTo;
 import ru.proshkina.restaurantvoting.to.UserTo;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo;
 import ru.proshkina.restaurantvoting.util.UserUtil;
+import ru.proshkina.restaurantvoting.web.ConditionalResponses;
+import ru.proshkina.restaurantvoting.web.IdempotentRequests;
+import ru.proshkina.restaurantvoting.web.MenuResponses;
+import ru.proshkina.restaurantvoting.web.VoteResultsBroadcaster;
 
 import javax.validation.Valid;
 import java.net.URI;
 import java.time.LocalDate;
 import java.util.List;
 
+import static ru.proshkina.restaurantvoting.web.IdempotentRequests.IDEMPOTENCY_KEY;
+
 @RestController
 @RequestMapping(value = ProfileController.REST_URL, produces = MediaType.APPLICATION_JSON_VALUE)
 public class ProfileController extends AbstractUserController {
@@ -33,6 +47,30 @@ public class ProfileController extends AbstractUserController {
     @Autowired
     RestaurantService restaurantService;
 
+    @Autowired
+    DishService dishService;
+
+    @Autowired
+    IdempotentRequests idempotentRequests;
+
+    @Autowired
+    VoteResultsBroadcaster voteResultsBroadcaster;
+
+    @Autowired
+    MenuResponses menuResponses;
+
+    @Autowired
+    DataVersions dataVersions;
+
+    @Autowired
+    ConditionalResponses conditionalResponses;
+
+    @Autowired
+    VoteTally voteTally;
+
+    @Autowired
+    DateTimeFactory dateTimeFactory;
+
     public ProfileController() {
     }
 
@@ -65,9 +103,12 @@ public class ProfileController extends AbstractUserController {
     }
 
     @PostMapping(value = "/restaurants/{restaurantId}/votes", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Vote> makeVote(@Valid @RequestBody Vote vote, @AuthenticationPrincipal AuthorizedUser authUser, @PathVariable("restaurantId") int restaurantId) {
+    public ResponseEntity<Vote> makeVote(@Valid @RequestBody Vote vote, @AuthenticationPrincipal AuthorizedUser authUser, @PathVariable("restaurantId") int restaurantId,
+                                         @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 
-        Vote created = voteService.createOrUpdate(vote, authUser.getId(), restaurantId);
+        int userId = authUser.getId();
+        Vote created = idempotencyKey == null ? voteService.createOrUpdate(vote, userId, restaurantId) :
+                idempotentRequests.execute(userId, idempotencyKey, () -> voteService.createOrUpdate(vote, userId, restaurantId));
         URI uriOfNewResource = ServletUriComponentsBuilder.fromCurrentContextPath()
                 .path(REST_URL + "/restaurants/{restaurantId}/votes")
                 .buildAndExpand(created.getId()).toUri();
@@ -75,13 +116,61 @@ public class ProfileController extends AbstractUserController {
         return ResponseEntity.created(uriOfNewResource).body(created);
     }
 
+    // no body: the vote is made of the user, the restaurant and the current time
+    @PostMapping("/restaurants/{restaurantId}/votes/async")
+    public ResponseEntity<VoteReceiptTo> makeVoteAsync(@AuthenticationPrincipal AuthorizedUser authUser, @PathVariable("restaurantId") int restaurantId) {
+        VoteReceiptTo receipt = voteService.submit(authUser.getId(), restaurantId);
+        URI uriOfReceipt = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path(REST_URL + "/votes/receipts/{id}")
+                .buildAndExpand(receipt.getId()).toUri();
+
+        return ResponseEntity.accepted().location(uriOfReceipt).body(receipt);
+    }
+
+    @GetMapping("/votes/receipts/{id}")
+    public VoteReceiptTo getVoteReceipt(@PathVariable("id") int id, @AuthenticationPrincipal AuthorizedUser authUser) {
+        return voteService.getReceipt(id, authUser.getId());
+    }
+
+    // results list the restaurants with a menu for the date, votes of today and later change them without a new version
     @GetMapping(value = "/restaurants/votes", params = {"date"})
-    public List<RestaurantTo> getVotesResultsForDate(@RequestParam("date") LocalDate date) {
-        return restaurantService.getAllWithVotesByDate(date);
+    public ResponseEntity<List<RestaurantTo>> getVotesResultsForDate(@RequestParam("date") LocalDate date, WebRequest request) {
+        DataVersions.Version version = dataVersions.get(DataVersions.RESULTS)
+                .and(dataVersions.get(DataVersions.RESTAURANTS))
+                .and(dataVersions.get(DataVersions.DISHES));
+        if (!date.isBefore(dateTimeFactory.getCurrentDate())) {
+            version = version.and(voteTally.getChanges());
+        }
+        return conditionalResponses.get(request, version, () -> restaurantService.getAllWithVotesByDate(date));
+    }
+
+    @GetMapping(value = "/restaurants/votes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamVotesResults() {
+        return voteResultsBroadcaster.subscribe();
+    }
+
+    @GetMapping("/restaurants/dishes/search")
+    public List<Dish> searchDishes(@RequestParam(value = "date", required = false) LocalDate date,
+                                   @RequestParam(value = "q", required = false) String query,
+                                   @RequestParam(value = "minPrice", required = false) Integer minPriceInCents,
+                                   @RequestParam(value = "maxPrice", required = false) Integer maxPriceInCents) {
+        return dishService.search(date == null ? dateTimeFactory.getCurrentDate() : date, query, minPriceInCents, maxPriceInCents);
     }
 
+    // ready JSON bytes; an If-None-Match request with the current ETag gets 304 without a body
     @GetMapping(value = "/restaurants/dishes", params = {"date"})
-    public List<Restaurant> getAllRestaurantsWithDishesForDate(@AuthenticationPrincipal AuthorizedUser authUser, @RequestParam("date") LocalDate date) {
-        return restaurantService.getAllWithDishesByDate(date);
+    public ResponseEntity<byte[]> getAllRestaurantsWithDishesForDate(@RequestParam("date") LocalDate date,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = MenuResponses.acceptsGzip(acceptEncoding);
+        MenuResponses.Body body = menuResponses.get(date, gzip);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(body.getEtag())
+                .header(HttpHeaders.CACHE_CONTROL, conditionalResponses.cacheControl(true))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body.getContent());
     }
 }
\ No newline at end of file
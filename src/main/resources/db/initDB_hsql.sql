@@ -1,17 +1,27 @@
 DROP TABLE user_roles IF EXISTS;
+DROP TABLE sealed_days IF EXISTS;
+DROP TABLE results_rollups IF EXISTS;
+DROP TABLE daily_results IF EXISTS;
 DROP TABLE dishes IF EXISTS;
 DROP TABLE votes IF EXISTS;
 DROP TABLE restaurants IF EXISTS;
 DROP TABLE users IF EXISTS;
 DROP SEQUENCE global_seq IF EXISTS;
+DROP SEQUENCE user_seq IF EXISTS;
+DROP SEQUENCE restaurant_seq IF EXISTS;
+DROP SEQUENCE vote_seq IF EXISTS;
+DROP SEQUENCE dish_seq IF EXISTS;
 
-CREATE SEQUENCE GLOBAL_SEQ
-  AS INTEGER
-  START WITH 100000;
+-- one sequence per table, incremented by the pooled-lo block size of AbstractBaseEntity:
+-- every value is the low end of a block of 50 ids handed out in memory by Hibernate or, for native inserts, by IdBlocks
+CREATE SEQUENCE user_seq AS INTEGER START WITH 100000 INCREMENT BY 50;
+CREATE SEQUENCE restaurant_seq AS INTEGER START WITH 100000 INCREMENT BY 50;
+CREATE SEQUENCE vote_seq AS INTEGER START WITH 100000 INCREMENT BY 50;
+CREATE SEQUENCE dish_seq AS INTEGER START WITH 100000 INCREMENT BY 50;
 
 CREATE TABLE users
 (
-  id               INTEGER GENERATED BY DEFAULT AS SEQUENCE GLOBAL_SEQ PRIMARY KEY,
+  id               INTEGER GENERATED BY DEFAULT AS SEQUENCE user_seq PRIMARY KEY,
   name             VARCHAR(255)            NOT NULL,
   email            VARCHAR(255)            NOT NULL,
   password         VARCHAR(255)            NOT NULL,
@@ -31,7 +41,7 @@ CREATE TABLE user_roles
 
 CREATE TABLE restaurants
 (
-  id    INTEGER GENERATED BY DEFAULT AS SEQUENCE GLOBAL_SEQ PRIMARY KEY,
+  id    INTEGER GENERATED BY DEFAULT AS SEQUENCE restaurant_seq PRIMARY KEY,
   name  VARCHAR(255) NOT NULL
 );
 CREATE UNIQUE INDEX restaurants_unique_name_idx
@@ -39,7 +49,7 @@ CREATE UNIQUE INDEX restaurants_unique_name_idx
 
 CREATE TABLE votes
 (
-  id              INTEGER  GENERATED BY DEFAULT AS SEQUENCE GLOBAL_SEQ PRIMARY KEY,
+  id              INTEGER  GENERATED BY DEFAULT AS SEQUENCE vote_seq PRIMARY KEY,
   date            DATE     NOT NULL,
   time            TIME     NOT NULL,
   user_id         INTEGER  NOT NULL,
@@ -52,7 +62,7 @@ CREATE UNIQUE INDEX votes_unique_date_user_id_idx
 
 CREATE TABLE dishes
 (
-  id             INTEGER GENERATED BY DEFAULT AS SEQUENCE GLOBAL_SEQ PRIMARY KEY,
+  id             INTEGER GENERATED BY DEFAULT AS SEQUENCE dish_seq PRIMARY KEY,
   date           DATE         NOT NULL,
   name           VARCHAR(255) NOT NULL,
   price          INT          NOT NULL,
@@ -61,4 +71,33 @@ CREATE TABLE dishes
   FOREIGN KEY (restaurant_id) REFERENCES restaurants (id) ON DELETE CASCADE
 );
 CREATE INDEX dishes_restaraunt_date_idx
-  ON dishes (date)
\ No newline at end of file
+  ON dishes (date);
+
+-- final results of closed voting days, written by the sealing job
+CREATE TABLE daily_results
+(
+  date           DATE     NOT NULL,
+  restaurant_id  INTEGER  NOT NULL,
+  votes_count    INTEGER  NOT NULL,
+  winner         BOOLEAN  DEFAULT FALSE NOT NULL,
+  PRIMARY KEY (date, restaurant_id),
+  FOREIGN KEY (restaurant_id) REFERENCES restaurants (id) ON DELETE CASCADE
+);
+
+-- weekly and monthly sums of daily_results, changed together with it
+CREATE TABLE results_rollups
+(
+  granularity    VARCHAR(5)  NOT NULL,
+  start_date     DATE        NOT NULL,
+  restaurant_id  INTEGER     NOT NULL,
+  votes_count    INTEGER     NOT NULL,
+  wins           INTEGER     NOT NULL,
+  PRIMARY KEY (granularity, start_date, restaurant_id),
+  FOREIGN KEY (restaurant_id) REFERENCES restaurants (id) ON DELETE CASCADE
+);
+
+-- closed voting days with sealed results, also the days without any menu
+CREATE TABLE sealed_days
+(
+  date           DATE     PRIMARY KEY
+);
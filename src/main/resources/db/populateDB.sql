@@ -1,16 +1,18 @@
 DELETE FROM USER_ROLES;
+DELETE FROM sealed_days;
+DELETE FROM results_rollups;
+DELETE FROM daily_results;
 DELETE FROM dishes;
 DELETE FROM votes;
 DELETE FROM restaurants;
 DELETE FROM users;
-ALTER SEQUENCE global_seq
-RESTART WITH 100000;
 
-INSERT INTO users (name, email, password) VALUES
-  ('User', 'user@yandex.ru', '{noop}password'),
-  ('User2', 'user2@yandex.ru', '{noop}password2'),
-  ('User3', 'user3@yandex.ru', '{noop}password3'),
-  ('Admin', 'admin@gmail.com', '{noop}admin');
+-- ids are explicit: a generated id takes a whole block of 50 from the sequence
+INSERT INTO users (id, name, email, password) VALUES
+  (100000, 'User', 'user@yandex.ru', '{noop}password'),
+  (100001, 'User2', 'user2@yandex.ru', '{noop}password2'),
+  (100002, 'User3', 'user3@yandex.ru', '{noop}password3'),
+  (100003, 'Admin', 'admin@gmail.com', '{noop}admin');
 
 INSERT INTO user_roles (role, user_id) VALUES
   ('ROLE_USER', 100000),
@@ -18,27 +20,32 @@ INSERT INTO user_roles (role, user_id) VALUES
   ('ROLE_USER', 100002),
   ('ROLE_ADMIN', 100003);
 
-INSERT INTO restaurants (name)
-VALUES ('Restaurant1'),
-  ('Restaurant2'),
-  ('Restaurant3'),
-  ('Restaurant4'),
-  ('Restaurant5');
+INSERT INTO restaurants (id, name)
+VALUES (100004, 'Restaurant1'),
+  (100005, 'Restaurant2'),
+  (100006, 'Restaurant3'),
+  (100007, 'Restaurant4'),
+  (100008, 'Restaurant5');
 
-INSERT INTO votes (date, time, user_id, restaurant_id)
-VALUES ('2018-10-26', '10:00:00', 100000, 100004),
-  ('2018-10-26', '09:00:00', 100001, 100006),
-  ('2018-10-25', '09:00:00', 100000, 100004),
-  ('2018-10-26', '10:30:00', 100002, 100004);
+INSERT INTO votes (id, date, time, user_id, restaurant_id)
+VALUES (100009, '2018-10-26', '10:00:00', 100000, 100004),
+  (100010, '2018-10-26', '09:00:00', 100001, 100006),
+  (100011, '2018-10-25', '09:00:00', 100000, 100004),
+  (100012, '2018-10-26', '10:30:00', 100002, 100004);
 
-INSERT INTO dishes (date, name, price, restaurant_id)
-VALUES ('2018-10-26', 'Dish1', 2000, 100004),
-  ('2018-10-26', 'Dish2', 1000, 100006),
-  ('2018-10-26', 'Dish3', 1500, 100005),
-  ('2018-10-26', 'Dish4', 1300, 100007),
-  ('2018-10-26', 'Dish5', 1450, 100007),
-  ('2018-10-26', 'Dish6', 1700, 100005),
-  ('2018-10-26', 'Dish7', 2000, 100005),
-  ('2018-10-26', 'Dish8', 2200, 100004),
-  ('2018-10-26', 'Dish9', 1800, 100007),
-  ('2018-10-25', 'Dish10', 2200, 100004);
\ No newline at end of file
+INSERT INTO dishes (id, date, name, price, restaurant_id)
+VALUES (100013, '2018-10-26', 'Dish1', 2000, 100004),
+  (100014, '2018-10-26', 'Dish2', 1000, 100006),
+  (100015, '2018-10-26', 'Dish3', 1500, 100005),
+  (100016, '2018-10-26', 'Dish4', 1300, 100007),
+  (100017, '2018-10-26', 'Dish5', 1450, 100007),
+  (100018, '2018-10-26', 'Dish6', 1700, 100005),
+  (100019, '2018-10-26', 'Dish7', 2000, 100005),
+  (100020, '2018-10-26', 'Dish8', 2200, 100004),
+  (100021, '2018-10-26', 'Dish9', 1800, 100007),
+  (100022, '2018-10-25', 'Dish10', 2200, 100004);
+
+ALTER SEQUENCE user_seq RESTART WITH 100004;
+ALTER SEQUENCE restaurant_seq RESTART WITH 100009;
+ALTER SEQUENCE vote_seq RESTART WITH 100013;
+ALTER SEQUENCE dish_seq RESTART WITH 100023;
\ No newline at end of file
@@ -13,6 +13,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.filter.CharacterEncodingFilter;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
+import ru.proshkina.restaurantvoting.web.filter.VoteAdmissionFilter;
 
 import javax.annotation.PostConstruct;
 
@@ -40,6 +43,15 @@ abstract public class AbstractControllerTest {
     @Autowired
     private CacheManager cacheManager;
 
+    @Autowired
+    private VoteLedger voteLedger;
+
+    @Autowired
+    private IdBlocks idBlocks;
+
+    @Autowired
+    private VoteAdmissionFilter voteAdmissionFilter;
+
     @Autowired
     private WebApplicationContext webApplicationContext;
 
@@ -53,11 +65,20 @@ abstract public class AbstractControllerTest {
         mockMvc = MockMvcBuilders
                 .webAppContextSetup(webApplicationContext)
                 .addFilter(CHARACTER_ENCODING_FILTER)
+                .addFilter(voteAdmissionFilter)
                 .apply(springSecurity())
                 .apply(documentationConfiguration(restDocumentation)
                         .operationPreprocessors()
                         .withResponseDefaults(prettyPrint()))
                 .build();
         cacheManager.getCache("menu").clear();
+        cacheManager.getCache("menuResponses").clear();
+        cacheManager.getCache("menuIndex").clear();
+        cacheManager.getCache("idempotency").clear();
+        cacheManager.getCache("results").clear();
+        cacheManager.getCache("liveResults").clear();
+        voteLedger.reset();
+        // populateDB.sql restarts the sequences
+        idBlocks.clear();
     }
 }
@@ -1,8 +1,13 @@
 package ru.proshkina.restaurantvoting;
 
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static ru.proshkina.restaurantvoting.util.ValidationUtil.getRootCause;
@@ -13,6 +18,27 @@ import static ru.proshkina.restaurantvoting.util.ValidationUtil.getRootCause;
 @Sql(scripts = {"classpath:db/initDB_hsql.sql","classpath:db/populateDB.sql"}, config = @SqlConfig(encoding = "UTF-8"))
 public abstract class AbstractServiceTest {
 
+    @Autowired
+    private VoteLedger voteLedger;
+
+    @Autowired
+    private IdBlocks idBlocks;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void resetLedger() {
+        voteLedger.reset();
+        // populateDB.sql restarts the sequences
+        idBlocks.clear();
+        cacheManager.getCache("menu").clear();
+        cacheManager.getCache("menuResponses").clear();
+        cacheManager.getCache("menuIndex").clear();
+        cacheManager.getCache("results").clear();
+        cacheManager.getCache("liveResults").clear();
+    }
+
     //  Check root cause in JUnit: https://github.com/junit-team/junit4/pull/778
     public <T extends Throwable> void validateRootCause(Runnable runnable, Class<T> exceptionClass) {
         assertThrows(exceptionClass, () -> {
@@ -0,0 +1,57 @@
+package ru.proshkina.restaurantvoting.service;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.proshkina.restaurantvoting.AbstractServiceTest;
+import ru.proshkina.restaurantvoting.model.Restaurant;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Insert throughput of entities with generated ids.
+ * Not part of the regular build, run with: mvn test -Dtest=IdGenerationBenchmark
+ */
+class IdGenerationBenchmark extends AbstractServiceTest {
+    private static final Logger log = LoggerFactory.getLogger(IdGenerationBenchmark.class);
+
+    private static final int WARMUP = 5_000;
+    private static final int INSERTS = 40_000;
+    private static final int THREADS = 4;
+
+    @Autowired
+    private RestaurantService service;
+
+    private final AtomicInteger names = new AtomicInteger();
+
+    @Test
+    void insertThroughput() throws Exception {
+        insert(WARMUP, 1);
+        double single = insert(INSERTS, 1);
+        double concurrent = insert(INSERTS, THREADS);
+        log.info("restaurant inserts/s: {} in 1 thread, {} in {} threads", Math.round(single), Math.round(concurrent), THREADS);
+        assertTrue(single > 0 && concurrent > 0);
+    }
+
+    private double insert(int count, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < count / threads; i++) {
+                    service.create(new Restaurant(null, "Benchmark" + names.incrementAndGet()));
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        return count / ((System.nanoTime() - start) / 1e9);
+    }
+}
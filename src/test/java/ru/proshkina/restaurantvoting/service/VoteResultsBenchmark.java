@@ -0,0 +1,102 @@
+package ru.proshkina.restaurantvoting.service;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.proshkina.restaurantvoting.AbstractServiceTest;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cost of counting the votes of a date with many voters.
+ * Not part of the regular build, run with: mvn test -Dtest=VoteResultsBenchmark
+ */
+class VoteResultsBenchmark extends AbstractServiceTest {
+    private static final Logger log = LoggerFactory.getLogger(VoteResultsBenchmark.class);
+
+    private static final int VOTERS = 12_000;
+    private static final int FIRST_USER_ID = 200_000;
+    private static final int[] RESTAURANT_IDS = {100004, 100005, 100006, 100007, 100008};
+    private static final int ITERATIONS = 30;
+
+    @Autowired
+    private CrudVoteRepository voteRepository;
+
+    @Autowired
+    private VoteLedger voteLedger;
+
+    @Autowired
+    private DateTimeFactory dateTimeFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void countVotes() {
+        // only the voting day of the ledger is counted in memory
+        LocalDate date = dateTimeFactory.getCurrentDate();
+        populate(date);
+        voteLedger.reset();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Supplier<Map<Integer, Integer>> entities = () -> transactionTemplate.execute(status ->
+                voteRepository.findAllByDateOrderByTimeAsc(date).stream()
+                        .collect(Collectors.groupingBy(vote -> vote.getRestaurant().getId(), Collectors.summingInt(vote -> 1))));
+        Supplier<Map<Integer, Integer>> groupBy = () -> voteRepository.countByRestaurantForDate(date).stream()
+                .collect(Collectors.toMap(row -> (Integer) row[0], row -> ((Long) row[1]).intValue()));
+        Supplier<Map<Integer, Integer>> tally = voteLedger::getVotesCount;
+
+        assertEquals(entities.get(), groupBy.get());
+        assertEquals(groupBy.get(), tally.get());
+        measure("entities + groupingBy", entities);
+        measure("GROUP BY projection", groupBy);
+        measure("in-memory tally", tally);
+    }
+
+    private void populate(LocalDate date) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> votes = new ArrayList<>();
+        for (int i = 0; i < VOTERS; i++) {
+            int userId = FIRST_USER_ID + i;
+            users.add(new Object[]{userId, "Voter" + i, "voter" + i + "@mail.ru", "{noop}password"});
+            votes.add(new Object[]{Date.valueOf(date), java.sql.Time.valueOf("10:00:00"), userId, RESTAURANT_IDS[i % RESTAURANT_IDS.length]});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, name, email, password) VALUES (?, ?, ?, ?)", users);
+        jdbcTemplate.batchUpdate("INSERT INTO votes (date, time, user_id, restaurant_id) VALUES (?, ?, ?, ?)", votes);
+    }
+
+    private static void measure(String name, Supplier<Map<Integer, Integer>> counting) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < ITERATIONS; i++) {
+            counting.get();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            counting.get();
+        }
+        long nanos = (System.nanoTime() - start) / ITERATIONS;
+        allocated = (threads.getCurrentThreadAllocatedBytes() - allocated) / ITERATIONS;
+        log.info("{} votes counted by {}: {} us, {} KB allocated per call", VOTERS, name, nanos / 1000, allocated / 1024);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.proshkina.restaurantvoting.service.analytics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.proshkina.restaurantvoting.AbstractServiceTest;
+import ru.proshkina.restaurantvoting.model.ResultsPeriod;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.service.vote.VoteService;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.*;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.USER_ID;
+import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.VOTE_ID;
+
+class AnalyticsServiceTest extends AbstractServiceTest {
+    private static final LocalDate PREVIOUS_DATE = TEST_DATE.minusDays(1);
+    private static final LocalDate WEEK_START = LocalDate.of(2018, 10, 22);
+    private static final LocalDate MONTH_START = LocalDate.of(2018, 10, 1);
+    private static final int[] RANKING = {RESTAURANT1_ID, RESTAURANT3_ID, RESTAURANT2_ID, RESTAURANT4.getId()};
+
+    @Autowired
+    private AnalyticsService service;
+
+    @Autowired
+    private RestaurantService restaurantService;
+
+    @Autowired
+    private VoteService voteService;
+
+    @BeforeEach
+    void seal() {
+        restaurantService.sealVotesResults(PREVIOUS_DATE);
+        restaurantService.sealVotesResults(TEST_DATE);
+    }
+
+    @Test
+    void testGetPopularity() {
+        List<PopularityTo> weeks = service.getPopularity(ResultsPeriod.WEEK, TEST_DATE, TEST_DATE);
+        assertPopularity(weeks, RANKING, new int[]{3, 1, 0, 0}, new int[]{2, 0, 0, 0});
+        assertEquals(WEEK_START, weeks.get(0).getStart());
+        assertPopularity(service.getPopularity(ResultsPeriod.MONTH, MONTH_START, MONTH_START),
+                RANKING, new int[]{3, 1, 0, 0}, new int[]{2, 0, 0, 0});
+        assertPopularity(service.getPopularity(ResultsPeriod.YEAR, TEST_DATE, TEST_DATE),
+                RANKING, new int[]{3, 1, 0, 0}, new int[]{2, 0, 0, 0});
+    }
+
+    @Test
+    void testRollupsFollowReseal() {
+        voteService.delete(VOTE_ID, USER_ID);
+        restaurantService.sealVotesResults(TEST_DATE);
+        // a tie is won by the restaurant with the lowest id
+        assertPopularity(service.getPopularity(ResultsPeriod.WEEK, WEEK_START, WEEK_START),
+                RANKING, new int[]{2, 1, 0, 0}, new int[]{2, 0, 0, 0});
+    }
+
+    @Test
+    void testGetTotals() {
+        int[] votes = {3, 1, 0, 0};
+        int[] wins = {2, 0, 0, 0};
+        // whole month, whole week and separate days
+        assertPopularity(service.getTotals(MONTH_START, LocalDate.of(2018, 10, 31)), RANKING, votes, wins);
+        assertPopularity(service.getTotals(WEEK_START, WEEK_START.plusDays(6)), RANKING, votes, wins);
+        assertPopularity(service.getTotals(PREVIOUS_DATE, TEST_DATE), RANKING, votes, wins);
+        assertPopularity(service.getTotals(TEST_DATE, LocalDate.of(2018, 12, 31)),
+                RANKING, new int[]{2, 1, 0, 0}, new int[]{1, 0, 0, 0});
+    }
+
+    @Test
+    void testGetTotalsWrongRange() {
+        assertThrows(IllegalRequestDataException.class, () -> service.getTotals(TEST_DATE, PREVIOUS_DATE));
+    }
+
+    @Test
+    void testStreamPriceStats() {
+        List<PriceStatsTo> stats = new ArrayList<>();
+        service.streamPriceStats(PREVIOUS_DATE, TEST_DATE, stats::add);
+        assertArrayEquals(new int[]{RESTAURANT1_ID, RESTAURANT1_ID, RESTAURANT2_ID, RESTAURANT3_ID, RESTAURANT4.getId()},
+                stats.stream().mapToInt(PriceStatsTo::getId).toArray());
+        assertEquals(PREVIOUS_DATE, stats.get(0).getDate());
+        assertArrayEquals(new int[]{1, 2, 3, 1, 3}, stats.stream().mapToInt(PriceStatsTo::getDishesCount).toArray());
+        assertArrayEquals(new int[]{2200, 2000, 1500, 1000, 1300}, stats.stream().mapToInt(PriceStatsTo::getMinPriceInCents).toArray());
+        assertArrayEquals(new int[]{2200, 2200, 2000, 1000, 1800}, stats.stream().mapToInt(PriceStatsTo::getMaxPriceInCents).toArray());
+        assertEquals(2100, stats.get(1).getAvgPriceInCents(), 0.01);
+        assertEquals(4550 / 3.0, stats.get(4).getAvgPriceInCents(), 0.01);
+    }
+
+    @Test
+    void testStreamPriceStatsWrongRange() {
+        assertThrows(IllegalRequestDataException.class, () -> service.streamPriceStats(TEST_DATE, PREVIOUS_DATE, stats -> {
+        }));
+    }
+
+    private static void assertPopularity(List<PopularityTo> actual, int[] ids, int[] votesCount, int[] wins) {
+        assertArrayEquals(ids, actual.stream().mapToInt(PopularityTo::getId).toArray());
+        assertArrayEquals(votesCount, actual.stream().mapToInt(PopularityTo::getVotesCount).toArray());
+        assertArrayEquals(wins, actual.stream().mapToInt(PopularityTo::getWins).toArray());
+    }
+}
@@ -2,12 +2,23 @@ package ru.proshkina.restaurantvoting.service.dish;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import ru.proshkina.restaurantvoting.AbstractServiceTest;
 import ru.proshkina.restaurantvoting.model.Dish;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
 import ru.proshkina.restaurantvoting.util.exception.NotFoundException;
 
 import javax.validation.ConstraintViolationException;
-
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static ru.proshkina.restaurantvoting.service.dish.DishTestData.*;
 
@@ -16,6 +27,12 @@ public class DishServiceTest extends AbstractServiceTest {
     @Autowired
     private DishService service;
 
+    @Autowired
+    private RestaurantService restaurantService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     @Test
     void testCreate() {
         Dish newDish = getCreated();
@@ -54,6 +71,103 @@ public class DishServiceTest extends AbstractServiceTest {
         assertMatch(service.get(DISH1_ID, RESTAURANT1_ID), updated);
     }
 
+    @Test
+    void testUpdateToOtherDate() {
+        LocalDate nextDate = TEST_DATE.plusDays(1);
+        restaurantService.getAllWithDishesByDate(TEST_DATE);
+        restaurantService.getAllWithDishesByDate(nextDate);
+        Dish updated = new Dish(DISH1_ID, "updated dish", nextDate, 2500);
+        service.update(updated, RESTAURANT1_ID);
+        Cache menu = cacheManager.getCache("menu");
+        assertNull(menu.get(TEST_DATE));
+        assertNull(menu.get(nextDate));
+        assertMatch(service.getAllByRestaurantAndDate(RESTAURANT1_ID, nextDate), updated);
+        assertMatch(service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE), DISH8);
+    }
+
+    @Test
+    void testUpdateInvalid() {
+        assertThrows(IllegalRequestDataException.class, () ->
+                service.update(new Dish(DISH1_ID, "updated dish", TEST_DATE, 1), RESTAURANT1_ID));
+        assertMatch(service.get(DISH1_ID, RESTAURANT1_ID), DISH1);
+    }
+
+    @Test
+    void testMenuEvictedByDate() {
+        restaurantService.getAllWithDishesByDate(TEST_DATE);
+        restaurantService.getAllWithDishesByDate(TEST_DATE.minusDays(1));
+        service.delete(DISH1_ID, RESTAURANT1_ID);
+        Cache menu = cacheManager.getCache("menu");
+        assertNull(menu.get(TEST_DATE));
+        assertNotNull(menu.get(TEST_DATE.minusDays(1)));
+    }
+
+    @Test
+    void testReplaceMenu() {
+        Dish kept = new Dish(DISH1_ID, "Dish1", TEST_DATE, 2100);
+        Dish added = new Dish(null, "Added dish", TEST_DATE, 1500);
+        service.replaceMenu(RESTAURANT1_ID, TEST_DATE, List.of(new Dish("Dish1", null, 2100), new Dish("Added dish", null, 1500)));
+        List<Dish> menu = service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE);
+        added.setId(menu.get(0).getId());
+        assertMatch(menu, added, kept);
+    }
+
+    @Test
+    void testReplaceMenuIds() {
+        service.replaceMenu(RESTAURANT1_ID, TEST_DATE, List.of(new Dish("Added dish", null, 1500), new Dish("Other dish", null, 1600)));
+        List<Integer> ids = service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE).stream()
+                .map(Dish::getId).sorted().collect(Collectors.toList());
+        // one block of dish_seq for both
+        assertEquals(ids.get(0) + 1, (int) ids.get(1));
+    }
+
+    @Test
+    void testReplaceMenuInvalid() {
+        assertThrows(IllegalRequestDataException.class, () ->
+                service.replaceMenu(RESTAURANT1_ID, TEST_DATE, List.of(new Dish("Dish1", null, 2100), new Dish("Dish1", null, 1500))));
+        assertThrows(IllegalRequestDataException.class, () ->
+                service.replaceMenu(RESTAURANT1_ID, TEST_DATE, List.of(new Dish("Dish1", null, 1))));
+        assertMatch(service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE), DISH1, DISH8);
+    }
+
+    @Test
+    void testReplaceMenuNotFound() {
+        assertThrows(NotFoundException.class, () ->
+                service.replaceMenu(1, TEST_DATE, List.of()));
+    }
+
+    @Test
+    void testCopyMenu() {
+        LocalDate nextDate = TEST_DATE.plusDays(1);
+        restaurantService.getAllWithDishesByDate(nextDate);
+        service.copyMenu(RESTAURANT1_ID, DISH10.getDate(), List.of(TEST_DATE, nextDate));
+        // copied again, the dishes already on the menus are kept
+        service.copyMenu(RESTAURANT1_ID, DISH10.getDate(), List.of(TEST_DATE, nextDate));
+        assertNull(cacheManager.getCache("menu").get(nextDate));
+        assertEquals(Set.of("Dish1", "Dish8", "Dish10"), getNames(service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE)));
+        List<Dish> copied = service.getAllForDate(nextDate);
+        assertEquals(1, copied.size());
+        assertEquals(DISH10.getName(), copied.get(0).getName());
+        assertEquals(DISH10.getPriceInCents(), copied.get(0).getPriceInCents());
+    }
+
+    @Test
+    void testCopyAllMenus() {
+        LocalDate nextDate = TEST_DATE.plusDays(1);
+        service.copyMenu(null, TEST_DATE, List.of(nextDate));
+        assertEquals(getNames(service.getAllForDate(TEST_DATE)), getNames(service.getAllForDate(nextDate)));
+        List<Integer> ids = service.getAllForDate(nextDate).stream().map(Dish::getId).sorted().collect(Collectors.toList());
+        // one block of dish_seq for all the copies
+        assertEquals(ids.size() - 1, ids.get(ids.size() - 1) - ids.get(0));
+    }
+
+    @Test
+    void testCopyMenuInvalid() {
+        assertThrows(IllegalRequestDataException.class, () -> service.copyMenu(null, TEST_DATE, List.of(TEST_DATE)));
+        assertThrows(IllegalRequestDataException.class, () -> service.copyMenu(null, TEST_DATE, List.of()));
+        assertThrows(NotFoundException.class, () -> service.copyMenu(1, TEST_DATE, List.of(TEST_DATE.plusDays(1))));
+    }
+
     @Test
     void testUpdateNotFound() {
         Dish updated = getUpdated();
@@ -77,6 +191,21 @@ public class DishServiceTest extends AbstractServiceTest {
         assertMatch(service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE), DISH1, DISH8);
     }
 
+    @Test
+    void testSearch() {
+        assertMatch(service.search(TEST_DATE, "dish1", null, null), DISH1);
+        assertMatch(service.search(TEST_DATE, null, 1300, 1800), DISH4, DISH5, DISH3, DISH6, DISH9);
+        assertMatch(service.search(TEST_DATE, "Di", null, 1450), DISH2, DISH4, DISH5);
+        assertMatch(service.search(TEST_DATE, "soup", null, null));
+    }
+
+    @Test
+    void testSearchAfterMenuChange() {
+        assertMatch(service.search(TEST_DATE, "soup", null, null));
+        Dish soup = service.create(new Dish(null, "Soup of the day", TEST_DATE, 500), RESTAURANT1_ID);
+        assertMatch(service.search(TEST_DATE, "the so", null, 1000), soup);
+    }
+
     @Test
     void testGetAllByRestaurant() {
         assertMatch(service.getAllByRestaurant(RESTAURANT1_ID), DISH10, DISH1, DISH8);
@@ -89,4 +218,8 @@ public class DishServiceTest extends AbstractServiceTest {
         validateRootCause(() -> service.create(new Dish(null, "Disssh", TEST_DATE, 1), RESTAURANT1_ID), ConstraintViolationException.class);
         validateRootCause(() -> service.create(new Dish(null, "Disssh", TEST_DATE, 10000000), RESTAURANT1_ID), ConstraintViolationException.class);
     }
-}
\ No newline at end of file
+
+    private static Set<String> getNames(List<Dish> dishes) {
+        return dishes.stream().map(Dish::getName).collect(Collectors.toSet());
+    }
+}
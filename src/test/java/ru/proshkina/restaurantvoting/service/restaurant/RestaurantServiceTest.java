@@ -2,24 +2,61 @@ package ru.proshkina.restaurantvoting.service.restaurant;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import ru.proshkina.restaurantvoting.AbstractServiceTest;
+import ru.proshkina.restaurantvoting.DateTimeFactory;
 import ru.proshkina.restaurantvoting.model.Restaurant;
+import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
+import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.DailyResultRepository;
 import ru.proshkina.restaurantvoting.service.dish.DishTestData;
+import ru.proshkina.restaurantvoting.service.vote.VoteLedger;
+import ru.proshkina.restaurantvoting.service.vote.VoteService;
+import ru.proshkina.restaurantvoting.to.RestaurantTo;
+import ru.proshkina.restaurantvoting.util.exception.IllegalRequestDataException;
 import ru.proshkina.restaurantvoting.util.exception.NotFoundException;
 
 import javax.validation.ConstraintViolationException;
+import java.time.LocalDate;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static ru.proshkina.restaurantvoting.service.dish.DishTestData.DISH1;
 import static ru.proshkina.restaurantvoting.service.dish.DishTestData.DISH8;
 import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.*;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.USER_ID;
+import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.VOTE_ID;
 
 public class RestaurantServiceTest extends AbstractServiceTest {
 
     @Autowired
     private RestaurantService service;
 
+    @Autowired
+    private VoteService voteService;
+
+    @Autowired
+    private CrudVoteRepository voteRepository;
+
+    @Autowired
+    private CrudRestaurantRepository restaurantRepository;
+
+    @Autowired
+    private DailyResultRepository dailyResultRepository;
+
+    @Autowired
+    private VoteLedger voteLedger;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     @Test
     void testCreate() {
         Restaurant newRest = new Restaurant(null, "new Restaurant");
@@ -42,6 +79,13 @@ public class RestaurantServiceTest extends AbstractServiceTest {
                 service.update(updated));
     }
 
+    @Test
+    void testUpdateInvalid() {
+        assertThrows(IllegalRequestDataException.class, () ->
+                service.update(new Restaurant(RESTAURANT1_ID, " ")));
+        assertMatch(service.get(RESTAURANT1_ID), RESTAURANT1);
+    }
+
     @Test
     void testGet() {
         assertMatch(service.get(RESTAURANT1_ID), RESTAURANT1);
@@ -78,6 +122,72 @@ public class RestaurantServiceTest extends AbstractServiceTest {
         DishTestData.assertMatch(allWithDishes.get(0).getDishes(), DISH1, DISH8);
     }
 
+    @Test
+    void testGetAllWithVotes() {
+        assertVotesCount(service.getAllWithVotesByDate(TEST_DATE), 2, 1, 0, 0);
+        voteService.delete(VOTE_ID, USER_ID);
+        assertVotesCount(service.getAllWithVotesByDate(TEST_DATE), 1, 1, 0, 0);
+        service.delete(RESTAURANT3_ID);
+        assertVotesCount(service.getAllWithVotesByDate(TEST_DATE), 1, 0, 0);
+    }
+
+    @Test
+    void testGetAllWithVotesCached() {
+        assertEquals(RESTAURANT1.getName(), service.getAllWithVotesByDate(TEST_DATE).get(0).getName());
+        // results of a closed day are not counted again until the day changes through the services
+        restaurantRepository.save(new Restaurant(RESTAURANT1_ID, "Renamed"));
+        assertEquals(RESTAURANT1.getName(), service.getAllWithVotesByDate(TEST_DATE).get(0).getName());
+        service.update(new Restaurant(RESTAURANT1_ID, "Updated"));
+        assertEquals("Updated", service.getAllWithVotesByDate(TEST_DATE).get(0).getName());
+    }
+
+    @Test
+    void testSealVotesResults() {
+        assertVotesCount(service.sealVotesResults(TEST_DATE), 2, 1, 0, 0);
+        // a deleted vote of a sealed day is taken out of its results
+        voteService.delete(VOTE_ID, USER_ID);
+        assertVotesCount(dailyResultRepository.getAll(TEST_DATE), 1, 1, 0, 0);
+        assertVotesCount(service.getAllWithVotesByDate(TEST_DATE), 1, 1, 0, 0);
+        assertVotesCount(service.sealVotesResults(TEST_DATE), 1, 1, 0, 0);
+    }
+
+    @Test
+    void testRollOverIfNewDay() {
+        DateTimeFactory timeFactory = mock(DateTimeFactory.class);
+        when(timeFactory.getCurrentDate()).thenReturn(TEST_DATE.plusDays(1));
+        VotingDayScheduler scheduler = new VotingDayScheduler(service, dailyResultRepository, voteLedger, timeFactory, 60000, 31);
+        scheduler.rollOverIfNewDay();
+        assertVotesCount(dailyResultRepository.getAll(TEST_DATE), 2, 1, 0, 0);
+        assertNotNull(cacheManager.getCache("menu").get(TEST_DATE.plusDays(1)));
+        assertNotNull(cacheManager.getCache("menu").get(TEST_DATE.plusDays(2)));
+
+        // the same day is rolled over once, a restart does not seal it again, evicted menus are loaded again
+        voteRepository.delete(VOTE_ID, USER_ID);
+        cacheManager.getCache("menu").clear();
+        scheduler.rollOverIfNewDay();
+        new VotingDayScheduler(service, dailyResultRepository, voteLedger, timeFactory, 60000, 31).rollOverIfNewDay();
+        assertVotesCount(dailyResultRepository.getAll(TEST_DATE), 2, 1, 0, 0);
+        assertNotNull(cacheManager.getCache("menu").get(TEST_DATE.plusDays(1)));
+
+        // days missed while the application was down are sealed, up to the backfill limit
+        when(timeFactory.getCurrentDate()).thenReturn(TEST_DATE.plusDays(5));
+        new VotingDayScheduler(service, dailyResultRepository, voteLedger, timeFactory, 60000, 3).rollOverIfNewDay();
+        assertFalse(dailyResultRepository.isSealed(TEST_DATE.plusDays(1)));
+        assertTrue(dailyResultRepository.isSealed(TEST_DATE.plusDays(2)));
+        assertTrue(dailyResultRepository.isSealed(TEST_DATE.plusDays(4)));
+        assertEquals(TEST_DATE.plusDays(4), dailyResultRepository.getLastSealed());
+    }
+
+    @Test
+    void testSealVotesResultsNotClosed() {
+        assertThrows(IllegalRequestDataException.class, () ->
+                service.sealVotesResults(LocalDate.now().plusDays(1)));
+    }
+
+    private static void assertVotesCount(List<RestaurantTo> results, int... votesCount) {
+        assertArrayEquals(votesCount, results.stream().mapToInt(RestaurantTo::getVotesCount).toArray());
+    }
+
     @Test
     void testValidation() {
         validateRootCause(() -> service.create(new Restaurant(null, " ")), ConstraintViolationException.class);
@@ -8,6 +8,8 @@ import java.util.List;
 
 public class RestaurantTestData {
     public static final Integer RESTAURANT1_ID = 100004;
+    public static final Integer RESTAURANT2_ID = RESTAURANT1_ID + 1;
+    public static final Integer RESTAURANT3_ID = RESTAURANT1_ID + 2;
     public static final Restaurant RESTAURANT1 = new Restaurant(RESTAURANT1_ID, "Restaurant1");
     public static final Restaurant RESTAURANT2 = new Restaurant(RESTAURANT1_ID + 1, "Restaurant2");
     public static final Restaurant RESTAURANT3 = new Restaurant(RESTAURANT1_ID + 2, "Restaurant3");
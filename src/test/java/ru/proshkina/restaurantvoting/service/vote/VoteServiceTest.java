@@ -2,26 +2,43 @@ package ru.proshkina.restaurantvoting.service.vote;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
 import ru.proshkina.restaurantvoting.AbstractServiceTest;
 import ru.proshkina.restaurantvoting.DateTimeFactory;
 import ru.proshkina.restaurantvoting.model.Vote;
-import ru.proshkina.restaurantvoting.repository.CrudRestaurantRepository;
-import ru.proshkina.restaurantvoting.repository.CrudUserRepository;
 import ru.proshkina.restaurantvoting.repository.CrudVoteRepository;
+import ru.proshkina.restaurantvoting.repository.IdBlocks;
+import ru.proshkina.restaurantvoting.repository.SequenceMigration;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.VoteImportTo;
 import ru.proshkina.restaurantvoting.util.exception.NotFoundException;
 import ru.proshkina.restaurantvoting.util.exception.VotingTimeIsOutException;
 
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
-import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.RESTAURANT1;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
 import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.RESTAURANT1_ID;
+import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.RESTAURANT2_ID;
+import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.RESTAURANT3_ID;
 import static ru.proshkina.restaurantvoting.service.user.UserTestData.*;
 import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.*;
 import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.assertMatch;
@@ -38,17 +55,38 @@ public class VoteServiceTest extends AbstractServiceTest {
     private CrudVoteRepository mockVoteRepository;
 
     @Mock
-    private CrudRestaurantRepository mockRestaurantRepository;
+    private VoteLedger mockVoteLedger;
 
-    @Mock
-    private CrudUserRepository mockUserRepository;
+    @Autowired
+    private VoteLedger voteLedger;
+
+    @Autowired
+    private VoteBatchWriter voteBatchWriter;
+
+    @Autowired
+    private IdBlocks idBlocks;
+
+    @Autowired
+    private DateTimeFactory dateTimeFactory;
+
+    @Autowired
+    private VoteImporter voteImporter;
+
+    @Autowired
+    private CrudVoteRepository voteRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-    @InjectMocks
     private VoteServiceImpl mockService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
+        mockService = new VoteServiceImpl(mockVoteRepository, timeFactory, mockVoteLedger, mock(VoteBatchWriter.class), new VoteReceipts(), mock(RestaurantService.class), false);
     }
 
     @Test
@@ -57,12 +95,256 @@ public class VoteServiceTest extends AbstractServiceTest {
         when(timeFactory.getCurrentTime()).thenReturn(TEST_TIME_BEFORE_LIMIT);
         when(timeFactory.getCurrentDate()).thenReturn(TEST_DATE);
         when(timeFactory.getTimeLimit()).thenReturn(TEST_TIME_LIMIT);
-        when(mockUserRepository.getOne(ADMIN_ID)).thenReturn(ADMIN);
-        when(mockRestaurantRepository.getOne(RESTAURANT1_ID)).thenReturn(RESTAURANT1);
-        when(mockVoteRepository.save(newVote)).thenReturn(newVote);
+        when(mockVoteLedger.vote(ADMIN_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT))
+                .thenReturn(new VoteLedger.AcceptedVote(VOTE_ID + 4, CompletableFuture.completedFuture(null)));
         Vote createdVote = mockService.createOrUpdate(newVote, ADMIN_ID, RESTAURANT1_ID);
-        assertMatch(createdVote, newVote);
-        verify(mockVoteRepository).save(newVote);
+        assertMatch(createdVote, new Vote(VOTE_ID + 4, TEST_DATE, TEST_TIME_BEFORE_LIMIT));
+        verify(mockVoteLedger).vote(ADMIN_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT);
+        verifyZeroInteractions(mockVoteRepository);
+    }
+
+    @Test
+    void testLedgerFlush() {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        voteLedger.vote(USER_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT);
+        voteBatchWriter.flush();
+        Vote first = service.getByUserAndDate(USER_ID, today);
+        voteLedger.vote(USER_ID, RESTAURANT2_ID, TEST_TIME_BEFORE_LIMIT);
+        assertEquals(RESTAURANT2_ID, voteLedger.getRestaurantId(USER_ID));
+        assertEquals(Map.of(RESTAURANT1_ID, 0, RESTAURANT2_ID, 1), voteLedger.getVotesCount());
+        voteBatchWriter.flush();
+        Vote saved = service.getByUserAndDate(USER_ID, today);
+        assertEquals(TEST_TIME_BEFORE_LIMIT, saved.getTime());
+        assertEquals(RESTAURANT2_ID, saved.getRestaurant().getId());
+        assertEquals(first.getId(), saved.getId());
+    }
+
+    @Test
+    void testDeleteBeforeFlush() {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        int id = voteLedger.vote(USER_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT).getId();
+        service.delete(id, USER_ID);
+        voteBatchWriter.flush();
+        assertThrows(NotFoundException.class, () -> service.getByUserAndDate(USER_ID, today));
+        assertNull(voteLedger.getRestaurantId(USER_ID));
+        assertEquals(id, voteLedger.vote(USER_ID, RESTAURANT2_ID, TEST_TIME_BEFORE_LIMIT).getId());
+        voteBatchWriter.flush();
+        assertEquals(id, (int) service.getByUserAndDate(USER_ID, today).getId());
+    }
+
+    @Test
+    void testImport() {
+        String csv = "date,time,userId,restaurantId\n" +
+                "2018-10-24,09:15,100000,100004\n" +
+                "2018-10-26,10:45,100000,100005\n" +
+                "2018-10-24,09:15,1,100004\n" +
+                "2018-10-24,nine,100001,100004\n";
+        VoteImportTo result = voteImporter.importVotes(new StringReader(csv), VoteImporter.Format.CSV);
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(2, result.getErrors().size());
+        Vote imported = service.getByUserAndDate(USER_ID, LocalDate.of(2018, 10, 24));
+        assertEquals(LocalTime.of(9, 15), imported.getTime());
+        assertEquals(RESTAURANT1_ID, imported.getRestaurant().getId());
+        Vote replaced = service.getByUserAndDate(USER_ID, TEST_DATE);
+        assertEquals(VOTE_ID, replaced.getId());
+        assertEquals(RESTAURANT2_ID, replaced.getRestaurant().getId());
+    }
+
+    @Test
+    void testImportNdjson() {
+        String ndjson = "{\"date\":\"2018-10-24\",\"time\":\"09:15\",\"userId\":100001,\"restaurantId\":100005}\n" +
+                "\n" +
+                "{\"date\":\"2018-10-24\",\"time\":\"09:15\",\"userId\":100001,\"restaurantId\":1}\n" +
+                "{\"date\":\"2018-10-24\"\n";
+        VoteImportTo result = voteImporter.importVotes(new StringReader(ndjson), VoteImporter.Format.NDJSON);
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(RESTAURANT2_ID, service.getByUserAndDate(USER_ID + 1, LocalDate.of(2018, 10, 24)).getRestaurant().getId());
+    }
+
+    @Test
+    void testImportToday() {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        // accepted, not saved yet
+        voteLedger.vote(USER_ID + 1, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT);
+        String csv = today + ",09:15," + USER_ID + "," + RESTAURANT2_ID + "\n";
+        assertEquals(1, voteImporter.importVotes(new StringReader(csv), VoteImporter.Format.CSV).getImported());
+        assertEquals(RESTAURANT1_ID, voteLedger.getRestaurantId(USER_ID + 1));
+        assertEquals(RESTAURANT2_ID, voteLedger.getRestaurantId(USER_ID));
+        assertEquals(Map.of(RESTAURANT1_ID, 1, RESTAURANT2_ID, 1), voteLedger.getVotesCount());
+    }
+
+    @Test
+    void testJournalReplay() throws Exception {
+        Path dir = Files.createTempDirectory("vote-journal");
+        LocalDate date = LocalDate.of(2018, 10, 24);
+        VoteJournal journal = new VoteJournal(dateTimeFactory, voteBatchWriter, idBlocks, dataSource, transactionManager, dir.toString(), 4, 1000);
+        journal.start();
+        journal.append(date, LocalTime.of(9, 0), USER_ID, RESTAURANT1_ID);
+        journal.append(date, LocalTime.of(9, 5), USER_ID + 1, RESTAURANT1_ID);
+        for (int i = 0; i < 10; i++) {
+            journal.append(date, LocalTime.of(9, 10 + i), USER_ID + 2, i % 2 == 0 ? RESTAURANT2_ID : RESTAURANT3_ID);
+        }
+        journal.append(date, LocalTime.of(9, 30), USER_ID, RESTAURANT2_ID);
+        journal.appendRemoval(date, LocalTime.of(9, 40), USER_ID + 1);
+        journal.stop();
+
+        VoteJournal restarted = new VoteJournal(dateTimeFactory, voteBatchWriter, idBlocks, dataSource, transactionManager, dir.toString(), 4, 1000);
+        restarted.start();
+        restarted.replay();
+        restarted.stop();
+        assertEquals(RESTAURANT2_ID, service.getByUserAndDate(USER_ID, date).getRestaurant().getId());
+        assertEquals(LocalTime.of(9, 19), service.getByUserAndDate(USER_ID + 2, date).getTime());
+        assertEquals(RESTAURANT3_ID, service.getByUserAndDate(USER_ID + 2, date).getRestaurant().getId());
+        assertThrows(NotFoundException.class, () -> service.getByUserAndDate(USER_ID + 1, date));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testJournalCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("vote-journal");
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        VoteJournal journal = new VoteJournal(dateTimeFactory, voteBatchWriter, idBlocks, dataSource, transactionManager, dir.toString(), 4, 1000);
+        journal.start();
+        long saved = journal.append(today, LocalTime.of(9, 0), USER_ID, RESTAURANT1_ID);
+        journal.append(today, LocalTime.of(9, 5), USER_ID + 1, RESTAURANT2_ID);
+        journal.persisted(today, saved);
+        journal.stop();
+
+        VoteJournal restarted = new VoteJournal(dateTimeFactory, voteBatchWriter, idBlocks, dataSource, transactionManager, dir.toString(), 4, 1000);
+        restarted.start();
+        restarted.replay();
+        restarted.stop();
+        assertThrows(NotFoundException.class, () -> service.getByUserAndDate(USER_ID, today));
+        assertEquals(RESTAURANT2_ID, service.getByUserAndDate(USER_ID + 1, today).getRestaurant().getId());
+
+        // replayed records are not replayed again over later changes
+        new JdbcTemplate(dataSource).update("DELETE FROM votes WHERE date=?", today);
+        VoteJournal again = new VoteJournal(dateTimeFactory, voteBatchWriter, idBlocks, dataSource, transactionManager, dir.toString(), 4, 1000);
+        again.start();
+        again.replay();
+        again.stop();
+        assertThrows(NotFoundException.class, () -> service.getByUserAndDate(USER_ID + 1, today));
+    }
+
+    @Test
+    void testTallyInDatabase() {
+        VoteTally databaseTally = new VoteTally(voteRepository, false);
+        assertEquals(Map.of(RESTAURANT1_ID, 2, RESTAURANT3_ID, 1), databaseTally.get(TEST_DATE));
+        service.delete(VOTE_ID, USER_ID);
+        assertEquals(Map.of(RESTAURANT1_ID, 1, RESTAURANT3_ID, 1), databaseTally.get(TEST_DATE));
+    }
+
+    @Test
+    void testBatchWriter() {
+        for (int i = 0; i < 3; i++) {
+            voteBatchWriter.reserve();
+        }
+        CompletableFuture<Void> first = voteBatchWriter.submit(VOTE_ID, TEST_DATE, TEST_TIME_BEFORE_LIMIT, USER_ID, RESTAURANT2_ID);
+        CompletableFuture<Void> second = voteBatchWriter.submit(VOTE_ID, TEST_DATE, TEST_TIME_BEFORE_LIMIT, USER_ID, RESTAURANT3_ID);
+        int otherId = idBlocks.next(IdBlocks.VOTE_SEQ);
+        CompletableFuture<Void> other = voteBatchWriter.submit(otherId, TEST_DATE, TEST_TIME_BEFORE_LIMIT, ADMIN_ID, RESTAURANT3_ID);
+        voteBatchWriter.flush();
+        CompletableFuture.allOf(first, second, other).join();
+        assertEquals(RESTAURANT3_ID, service.getByUserAndDate(USER_ID, TEST_DATE).getRestaurant().getId());
+        assertEquals(RESTAURANT3_ID, service.getByUserAndDate(ADMIN_ID, TEST_DATE).getRestaurant().getId());
+        assertMatch(service.getByUserAndDate(USER_ID, TEST_DATE), new Vote(VOTE_ID, TEST_DATE, TEST_TIME_BEFORE_LIMIT));
+        assertEquals(otherId, (int) service.getByUserAndDate(ADMIN_ID, TEST_DATE).getId());
+    }
+
+    @Test
+    void testBatchWriterRetries() {
+        voteBatchWriter.reserve();
+        voteBatchWriter.reserve();
+        CompletableFuture<Void> failing = voteBatchWriter.submit(idBlocks.next(IdBlocks.VOTE_SEQ), TEST_DATE, TEST_TIME_BEFORE_LIMIT, ADMIN_ID, 1);
+        CompletableFuture<Void> other = voteBatchWriter.submit(VOTE_ID, TEST_DATE, TEST_TIME_BEFORE_LIMIT, USER_ID, RESTAURANT2_ID);
+        voteBatchWriter.flush();
+        other.join();
+        assertFalse(failing.isDone());
+        for (int i = 1; i < 5; i++) {
+            voteBatchWriter.flush();
+        }
+        assertTrue(failing.isCompletedExceptionally());
+    }
+
+    @Test
+    void testLedgerRollback() throws InterruptedException {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        voteLedger.vote(USER_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT).getSaved().join();
+        // the ledger still knows the restaurant deleted behind its back, the vote for it can't be saved
+        new JdbcTemplate(dataSource).update("DELETE FROM restaurants WHERE id=?", RESTAURANT2_ID);
+        CompletableFuture<Void> failed = voteLedger.vote(USER_ID, RESTAURANT2_ID, TEST_TIME_BEFORE_LIMIT).getSaved();
+        for (int i = 0; i < 5; i++) {
+            voteBatchWriter.flush();
+        }
+        assertThrows(CompletionException.class, failed::join);
+        for (int i = 0; i < 100 && !RESTAURANT1_ID.equals(voteLedger.getRestaurantId(USER_ID)); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(RESTAURANT1_ID, voteLedger.getRestaurantId(USER_ID));
+        assertEquals(1, (int) voteLedger.getVotesCount().get(RESTAURANT1_ID));
+        voteLedger.vote(USER_ID, RESTAURANT3_ID, TEST_TIME_BEFORE_LIMIT).getSaved().join();
+        assertEquals(RESTAURANT3_ID, service.getByUserAndDate(USER_ID, today).getRestaurant().getId());
+    }
+
+    @Test
+    void testRemoveRestaurant() throws InterruptedException {
+        LocalDate today = dateTimeFactory.getCurrentDate();
+        voteLedger.vote(USER_ID, RESTAURANT2_ID, TEST_TIME_BEFORE_LIMIT).getSaved().join();
+        voteLedger.vote(USER_ID + 1, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT).getSaved().join();
+        // accepted after the restaurant is deleted, before the ledger forgets it
+        new JdbcTemplate(dataSource).update("DELETE FROM restaurants WHERE id=?", RESTAURANT1_ID);
+        CompletableFuture<Void> failed = voteLedger.vote(USER_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT).getSaved();
+        voteLedger.removeRestaurant(RESTAURANT1_ID);
+        assertEquals(RESTAURANT2_ID, voteLedger.getRestaurantId(USER_ID));
+        assertNull(voteLedger.getRestaurantId(USER_ID + 1));
+        assertEquals(Map.of(RESTAURANT2_ID, 1), voteLedger.getVotesCount());
+        for (int i = 0; i < 5; i++) {
+            voteBatchWriter.flush();
+        }
+        assertThrows(CompletionException.class, failed::join);
+        Thread.sleep(50);
+        assertEquals(Map.of(RESTAURANT2_ID, 1), voteLedger.getVotesCount());
+        assertEquals(RESTAURANT2_ID, service.getByUserAndDate(USER_ID, today).getRestaurant().getId());
+        assertThrows(NotFoundException.class, () -> voteLedger.vote(USER_ID, RESTAURANT1_ID, TEST_TIME_BEFORE_LIMIT));
+    }
+
+    @Test
+    void testNativeInsertIds() {
+        LocalDate date = LocalDate.of(2018, 10, 24);
+        String csv = "2018-10-24,09:00,100000,100004\n" +
+                "2018-10-24,09:10,100001,100005\n";
+        voteImporter.importVotes(new StringReader(csv), VoteImporter.Format.CSV);
+        // ids follow each other within a block instead of taking a block each
+        assertEquals(VOTE_ID + 4, (int) service.getByUserAndDate(USER_ID, date).getId());
+        assertEquals(VOTE_ID + 5, (int) service.getByUserAndDate(USER_ID + 1, date).getId());
+    }
+
+    @Test
+    void testSequenceMigration() {
+        DataSource legacy = new DriverManagerDataSource("jdbc:hsqldb:mem:legacy", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(legacy);
+        jdbcTemplate.execute("CREATE SEQUENCE global_seq AS INTEGER START WITH 100000");
+        for (String table : new String[]{"users", "restaurants", "votes", "dishes"}) {
+            jdbcTemplate.execute("CREATE TABLE " + table + " (id INTEGER GENERATED BY DEFAULT AS SEQUENCE global_seq PRIMARY KEY, name VARCHAR(20))");
+            jdbcTemplate.update("INSERT INTO " + table + " (name) VALUES (?)", table);
+        }
+        try {
+            SequenceMigration migration = new SequenceMigration(legacy);
+            migration.migrate();
+            // done once
+            migration.migrate();
+            assertEquals(100000, (int) jdbcTemplate.queryForObject("SELECT id FROM users", Integer.class));
+            assertEquals(100004, (int) jdbcTemplate.queryForObject("CALL NEXT VALUE FOR dish_seq", Integer.class));
+            assertEquals(100054, (int) jdbcTemplate.queryForObject("CALL NEXT VALUE FOR dish_seq", Integer.class));
+            assertEquals(100002, (int) jdbcTemplate.queryForObject("CALL NEXT VALUE FOR restaurant_seq", Integer.class));
+            assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM votes", Integer.class));
+        } finally {
+            jdbcTemplate.execute("SHUTDOWN");
+        }
     }
 
     @Test
@@ -73,6 +355,7 @@ public class VoteServiceTest extends AbstractServiceTest {
         when(timeFactory.getTimeLimit()).thenReturn(TEST_TIME_LIMIT);
         assertThrows(VotingTimeIsOutException.class, () ->
                 mockService.createOrUpdate(newVote, ADMIN_ID, RESTAURANT1_ID));
+        verifyZeroInteractions(mockVoteLedger, mockVoteRepository);
     }
 
     @Test
@@ -0,0 +1,99 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import ru.proshkina.restaurantvoting.AbstractControllerTest;
+import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.PopularityTo;
+import ru.proshkina.restaurantvoting.to.PriceStatsTo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.proshkina.restaurantvoting.TestUtil.readListFromJsonMvcResult;
+import static ru.proshkina.restaurantvoting.TestUtil.userHttpBasic;
+import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.TEST_DATE;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.ADMIN;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.USER;
+
+class AnalyticsControllerTest extends AbstractControllerTest {
+
+    private static final String REST_URL = AnalyticsController.REST_URL + "/";
+
+    @Autowired
+    RestaurantService restaurantService;
+
+    @Test
+    void testGetPopularity() throws Exception {
+        restaurantService.sealVotesResults(TEST_DATE);
+        mockMvc.perform(get(REST_URL + "popularity")
+                .param("period", "MONTH")
+                .param("from", "2018-10-01")
+                .param("to", "2018-10-31")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(result -> assertArrayEquals(new int[]{2, 1, 0, 0},
+                        readListFromJsonMvcResult(result, PopularityTo.class).stream().mapToInt(PopularityTo::getVotesCount).toArray()));
+    }
+
+    @Test
+    void testGetTotals() throws Exception {
+        restaurantService.sealVotesResults(TEST_DATE);
+        mockMvc.perform(get(REST_URL + "totals")
+                .param("from", "2018-01-01")
+                .param("to", "2018-12-31")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(result -> assertArrayEquals(new int[]{1, 0, 0, 0},
+                        readListFromJsonMvcResult(result, PopularityTo.class).stream().mapToInt(PopularityTo::getWins).toArray()));
+    }
+
+    @Test
+    void testGetTotalsWrongRange() throws Exception {
+        mockMvc.perform(get(REST_URL + "totals")
+                .param("from", "2018-12-31")
+                .param("to", "2018-01-01")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testGetPriceStats() throws Exception {
+        mockMvc.perform(get(REST_URL + "prices")
+                .param("from", "2018-10-26")
+                .param("to", "2018-10-26")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(result -> assertArrayEquals(new int[]{2, 3, 1, 3},
+                        readListFromJsonMvcResult(result, PriceStatsTo.class).stream().mapToInt(PriceStatsTo::getDishesCount).toArray()));
+    }
+
+    @Test
+    void testGetPriceStatsWrongRange() throws Exception {
+        mockMvc.perform(get(REST_URL + "prices")
+                .param("from", "2018-10-26")
+                .param("to", "2018-10-25")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testGetTotalsForbidden() throws Exception {
+        mockMvc.perform(get(REST_URL + "totals")
+                .param("from", "2018-01-01")
+                .param("to", "2018-12-31")
+                .with(userHttpBasic(USER)))
+                .andDo(print())
+                .andExpect(status().isForbidden());
+    }
+}
@@ -2,14 +2,19 @@ package ru.proshkina.restaurantvoting.web;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import ru.proshkina.restaurantvoting.AbstractControllerTest;
 import ru.proshkina.restaurantvoting.model.Dish;
 import ru.proshkina.restaurantvoting.service.dish.DishService;
 import ru.proshkina.restaurantvoting.web.json.JsonUtil;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
@@ -109,6 +114,48 @@ class DishControllerTest extends AbstractControllerTest {
         assertMatch(service.get(DISH1_ID, RESTAURANT1_ID), updated);
     }
 
+    @Test
+    void testReplaceMenu() throws Exception {
+        mockMvc.perform(put(REST_URL + RESTAURANT1_ID + "/menus/2018-10-26")
+                .with(userHttpBasic(ADMIN))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(List.of(new Dish("Dish8", null, 2200)))))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+
+        assertMatch(service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE), DISH8);
+    }
+
+    @Test
+    void testReplaceMenuInvalid() throws Exception {
+        mockMvc.perform(put(REST_URL + RESTAURANT1_ID + "/menus/2018-10-26")
+                .with(userHttpBasic(ADMIN))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(List.of(new Dish(" ", null, 2200)))))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testCopyMenu() throws Exception {
+        mockMvc.perform(post(REST_URL + RESTAURANT1_ID + "/menus/2018-10-26/copy")
+                .param("to", "2018-10-27", "2018-10-28")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+
+        assertEquals(2, service.getAllByRestaurantAndDate(RESTAURANT1_ID, TEST_DATE.plusDays(2)).size());
+    }
+
+    @Test
+    void testCopyMenusToSameDate() throws Exception {
+        mockMvc.perform(post(REST_URL + "menus/2018-10-26/copy")
+                .param("to", "2018-10-26")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     @Test
     void testGetAll() throws Exception {
         mockMvc.perform(get(REST_URL + "/dishes")
@@ -147,6 +194,22 @@ class DishControllerTest extends AbstractControllerTest {
                         , DISH10, DISH1, DISH8));
     }
 
+    @Test
+    void testGetAllByRestaurantForPastDateNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get(REST_URL + RESTAURANT1_ID + "/dishes")
+                .param("date", "2018-10-26")
+                .with(userHttpBasic(ADMIN)))
+                .andExpect(status().isOk())
+                .andReturn();
+        // past menus can still be edited
+        assertEquals("no-cache, private", result.getResponse().getHeader(HttpHeaders.CACHE_CONTROL));
+        mockMvc.perform(get(REST_URL + RESTAURANT1_ID + "/dishes")
+                .param("date", "2018-10-26")
+                .header(HttpHeaders.IF_NONE_MATCH, result.getResponse().getHeader(HttpHeaders.ETAG))
+                .with(userHttpBasic(ADMIN)))
+                .andExpect(status().isNotModified());
+    }
+
     @Test
     void testGetAllByRestaurantForDate() throws Exception {
         mockMvc.perform(RestDocumentationRequestBuilders.get(REST_URL + "{restaurantId}/dishes", RESTAURANT1_ID)
@@ -2,13 +2,20 @@ package ru.proshkina.restaurantvoting.web;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.ResultActions;
 import ru.proshkina.restaurantvoting.AbstractControllerTest;
 import ru.proshkina.restaurantvoting.model.Restaurant;
 import ru.proshkina.restaurantvoting.service.restaurant.RestaurantService;
+import ru.proshkina.restaurantvoting.to.RestaurantTo;
 import ru.proshkina.restaurantvoting.web.json.JsonUtil;
 
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -37,6 +44,28 @@ class RestaurantControllerTest extends AbstractControllerTest {
                         , RESTAURANT1));
     }
 
+    @Test
+    void testGetAllNotModified() throws Exception {
+        String etag = mockMvc.perform(get(REST_URL)
+                .with(userHttpBasic(ADMIN)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        mockMvc.perform(get(REST_URL)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .with(userHttpBasic(ADMIN)))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        service.update(new Restaurant(RESTAURANT1_ID, "Renamed"));
+        String changed = mockMvc.perform(get(REST_URL)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .with(userHttpBasic(ADMIN)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, changed);
+    }
+
     @Test
     void testGetForbidden() throws Exception {
         mockMvc.perform(get(REST_URL + RESTAURANT1_ID)
@@ -103,4 +132,30 @@ class RestaurantControllerTest extends AbstractControllerTest {
                 .andExpect(result -> assertMatch(readListFromJsonMvcResult(result, Restaurant.class)
                         , RESTAURANT1, RESTAURANT2, RESTAURANT3, RESTAURANT4, RESTAURANT5));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSealVotesResults() throws Exception {
+        mockMvc.perform(post(REST_URL + "votes/seal?date=" + TEST_DATE)
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(result -> assertArrayEquals(new int[]{2, 1, 0, 0},
+                        readListFromJsonMvcResult(result, RestaurantTo.class).stream().mapToInt(RestaurantTo::getVotesCount).toArray()));
+    }
+
+    @Test
+    void testSealVotesResultsNotClosed() throws Exception {
+        mockMvc.perform(post(REST_URL + "votes/seal?date=" + LocalDate.now().plusDays(1))
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testSealVotesResultsForbidden() throws Exception {
+        mockMvc.perform(post(REST_URL + "votes/seal?date=" + TEST_DATE)
+                .with(userHttpBasic(USER)))
+                .andDo(print())
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,59 @@
+package ru.proshkina.restaurantvoting.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.ResultActions;
+import ru.proshkina.restaurantvoting.AbstractControllerTest;
+import ru.proshkina.restaurantvoting.to.VoteImportTo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.proshkina.restaurantvoting.TestUtil.readFromJsonResultActions;
+import static ru.proshkina.restaurantvoting.TestUtil.userHttpBasic;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.ADMIN;
+import static ru.proshkina.restaurantvoting.service.user.UserTestData.USER;
+
+class VoteImportControllerTest extends AbstractControllerTest {
+
+    private static final String REST_URL = VoteImportController.REST_URL;
+
+    private static final String NDJSON = "{\"date\":\"2018-10-24\",\"time\":\"09:15\",\"userId\":100000,\"restaurantId\":100004}\n" +
+            "{\"date\":\"2018-10-24\",\"time\":\"09:20\",\"userId\":100001,\"restaurantId\":100005}\n";
+
+    @Test
+    void testImportNdjson() throws Exception {
+        ResultActions resultActions = mockMvc.perform(post(REST_URL)
+                .contentType(VoteImportController.NDJSON_VALUE)
+                .content(NDJSON)
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk());
+        VoteImportTo result = readFromJsonResultActions(resultActions, VoteImportTo.class);
+        assertEquals(2, result.getImported());
+        assertEquals(0, result.getRejected());
+    }
+
+    @Test
+    void testImportCsv() throws Exception {
+        ResultActions resultActions = mockMvc.perform(post(REST_URL)
+                .contentType(VoteImportController.CSV_VALUE)
+                .content("2018-10-24,09:15,100000,100004\n2018-10-24,09:15,100000,100099\n")
+                .with(userHttpBasic(ADMIN)))
+                .andDo(print())
+                .andExpect(status().isOk());
+        VoteImportTo result = readFromJsonResultActions(resultActions, VoteImportTo.class);
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+    }
+
+    @Test
+    void testImportForbidden() throws Exception {
+        mockMvc.perform(post(REST_URL)
+                .contentType(VoteImportController.NDJSON_VALUE)
+                .content(NDJSON)
+                .with(userHttpBasic(USER)))
+                .andDo(print())
+                .andExpect(status().isForbidden());
+    }
+}
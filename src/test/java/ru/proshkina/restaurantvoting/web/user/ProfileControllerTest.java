@@ -2,32 +2,61 @@ package ru.proshkina.restaurantvoting.web.user;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.ResultActions;
 import ru.proshkina.restaurantvoting.AbstractControllerTest;
 import ru.proshkina.restaurantvoting.DateTimeFactory;
+import ru.proshkina.restaurantvoting.model.Dish;
 import ru.proshkina.restaurantvoting.model.User;
 import ru.proshkina.restaurantvoting.model.Vote;
+import ru.proshkina.restaurantvoting.service.dish.DishTestData;
 import ru.proshkina.restaurantvoting.service.user.UserService;
+import ru.proshkina.restaurantvoting.service.vote.VoteBatchWriter;
 import ru.proshkina.restaurantvoting.service.vote.VoteService;
 import ru.proshkina.restaurantvoting.service.vote.VoteTestData;
 import ru.proshkina.restaurantvoting.to.UserTo;
+import ru.proshkina.restaurantvoting.to.VoteReceiptTo;
 import ru.proshkina.restaurantvoting.util.UserUtil;
+import ru.proshkina.restaurantvoting.util.exception.TooManyRequestsException;
+import ru.proshkina.restaurantvoting.web.RateLimitInterceptor;
+import ru.proshkina.restaurantvoting.web.filter.VoteAdmissionFilter;
 import ru.proshkina.restaurantvoting.web.json.JsonUtil;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
+import java.util.zip.GZIPInputStream;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static ru.proshkina.restaurantvoting.TestUtil.readFromJsonResultActions;
+import static ru.proshkina.restaurantvoting.TestUtil.readListFromJsonMvcResult;
+import static ru.proshkina.restaurantvoting.service.dish.DishTestData.DISH2;
+import static ru.proshkina.restaurantvoting.service.dish.DishTestData.DISH4;
 import static ru.proshkina.restaurantvoting.TestUtil.userHttpBasic;
 import static ru.proshkina.restaurantvoting.service.restaurant.RestaurantTestData.*;
 import static ru.proshkina.restaurantvoting.service.user.UserTestData.*;
 import static ru.proshkina.restaurantvoting.service.user.UserTestData.assertMatch;
 import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.VOTE;
 import static ru.proshkina.restaurantvoting.service.vote.VoteTestData.VOTE_ID;
+import static ru.proshkina.restaurantvoting.web.IdempotentRequests.IDEMPOTENCY_KEY;
 
 class ProfileControllerTest extends AbstractControllerTest {
 
@@ -39,9 +68,15 @@ class ProfileControllerTest extends AbstractControllerTest {
     @Autowired
     VoteService voteService;
 
+    @Autowired
+    VoteBatchWriter voteBatchWriter;
+
     @Autowired
     DateTimeFactory dateTimeFactory;
 
+    @Autowired
+    VoteAdmissionFilter voteAdmissionFilter;
+
     @Test
     void testGet() throws Exception {
         mockMvc.perform(get(REST_URL)
@@ -137,6 +172,110 @@ class ProfileControllerTest extends AbstractControllerTest {
         }
     }
 
+    @Test
+    void testMakeVoteIdempotent() throws Exception {
+        ResultActions first = mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT1_ID + "/votes")
+                .with(userHttpBasic(USER))
+                .header(IDEMPOTENCY_KEY, "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(new Vote(VOTE))))
+                .andDo(print());
+        ResultActions retry = mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT2_ID + "/votes")
+                .with(userHttpBasic(USER))
+                .header(IDEMPOTENCY_KEY, "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(new Vote(VOTE))))
+                .andDo(print());
+        if (dateTimeFactory.getCurrentTime().isBefore(dateTimeFactory.getTimeLimit())) {
+            first.andExpect(status().isCreated());
+            retry.andExpect(status().isCreated());
+            Vote original = readFromJsonResultActions(first, Vote.class);
+            Vote replayed = readFromJsonResultActions(retry, Vote.class);
+            assertEquals(RESTAURANT1_ID, replayed.getRestaurant().getId());
+            assertEquals(original.getTime(), replayed.getTime());
+            voteBatchWriter.flush();
+            assertEquals(RESTAURANT1_ID, voteService.getByUserAndDate(USER_ID, dateTimeFactory.getCurrentDate()).getRestaurant().getId());
+        } else {
+            first.andExpect(status().isUnprocessableEntity());
+            retry.andExpect(status().isUnprocessableEntity());
+        }
+    }
+
+    @Test
+    void testMakeVoteIdempotentAfterTimeLimit() throws Exception {
+        Object target = AopTestUtils.getUltimateTargetObject(voteService);
+        DateTimeFactory afterLimit = mock(DateTimeFactory.class);
+        when(afterLimit.getCurrentDate()).thenReturn(dateTimeFactory.getCurrentDate());
+        when(afterLimit.getCurrentTime()).thenReturn(LocalTime.of(12, 0));
+        when(afterLimit.getTimeLimit()).thenReturn(LocalTime.of(11, 0));
+        ReflectionTestUtils.setField(target, "dateTimeFactory", afterLimit);
+        try {
+            for (int i = 0; i < 2; i++) {
+                mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT1_ID + "/votes")
+                        .with(userHttpBasic(USER))
+                        .header(IDEMPOTENCY_KEY, "late-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(JsonUtil.writeValue(new Vote(VOTE))))
+                        .andExpect(status().isUnprocessableEntity());
+            }
+        } finally {
+            ReflectionTestUtils.setField(target, "dateTimeFactory", dateTimeFactory);
+        }
+    }
+
+    @Test
+    void testMakeVoteAsync() throws Exception {
+        ResultActions resultActions = mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT1_ID + "/votes/async")
+                .with(userHttpBasic(USER)))
+                .andDo(print());
+        if (dateTimeFactory.getCurrentTime().isBefore(dateTimeFactory.getTimeLimit())) {
+            resultActions.andExpect(status().isAccepted());
+            VoteReceiptTo receipt = readFromJsonResultActions(resultActions, VoteReceiptTo.class);
+            voteBatchWriter.flush();
+            ResultActions receiptActions = mockMvc.perform(get(REST_URL + "/votes/receipts/" + receipt.getId())
+                    .with(userHttpBasic(USER)))
+                    .andDo(print())
+                    .andExpect(status().isOk());
+            assertEquals(VoteReceiptTo.Status.SAVED, readFromJsonResultActions(receiptActions, VoteReceiptTo.class).getStatus());
+            mockMvc.perform(get(REST_URL + "/votes/receipts/" + receipt.getId())
+                    .with(userHttpBasic(USER2)))
+                    .andExpect(status().isUnprocessableEntity());
+        } else {
+            resultActions.andExpect(status().isUnprocessableEntity());
+        }
+    }
+
+    @Test
+    void testMakeVoteUnAuth() throws Exception {
+        ResultActions resultActions = mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT1_ID + "/votes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(new Vote(VOTE))))
+                .andDo(print());
+        if (dateTimeFactory.getCurrentTime().isBefore(dateTimeFactory.getTimeLimit())) {
+            resultActions.andExpect(status().isUnauthorized());
+        } else {
+            resultActions.andExpect(status().isUnprocessableEntity());
+        }
+    }
+
+    @Test
+    void testMakeVoteMalformedRestaurantId() throws Exception {
+        mockMvc.perform(post(REST_URL + "/restaurants/abc/votes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonUtil.writeValue(new Vote(VOTE))))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8));
+    }
+
+    @Test
+    void testGetVoteReceiptNotFound() throws Exception {
+        mockMvc.perform(get(REST_URL + "/votes/receipts/" + 1_000_000)
+                .with(userHttpBasic(USER)))
+                .andDo(print())
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     @Test
     void testGetVotesResultsForDate() throws Exception {
         mockMvc.perform(get(REST_URL + "/restaurants/votes")
@@ -147,6 +286,37 @@ class ProfileControllerTest extends AbstractControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testGetVotesResultsNotModified() throws Exception {
+        String etag = mockMvc.perform(get(REST_URL + "/restaurants/votes")
+                .param("date", "2018-10-26")
+                .with(userHttpBasic(USER)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get(REST_URL + "/restaurants/votes")
+                .param("date", "2018-10-26")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .with(userHttpBasic(USER)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testStreamVotesResults() throws Exception {
+        MvcResult result = mockMvc.perform(get(REST_URL + "/restaurants/votes/stream")
+                .with(userHttpBasic(USER)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertTrue(result.getResponse().getContentAsString().startsWith("event:results\ndata:["));
+        if (dateTimeFactory.getCurrentTime().isBefore(dateTimeFactory.getTimeLimit())) {
+            voteService.submit(USER_ID, RESTAURANT1_ID);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (result.getResponse().getContentAsString().indexOf("event:results", 1) < 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(result.getResponse().getContentAsString().indexOf("event:results", 1) > 0);
+        }
+    }
+
     @Test
     void testGetAllRestaurantsWithDishesForDate() throws Exception {
         mockMvc.perform(get(REST_URL + "/restaurants/dishes")
@@ -156,4 +326,112 @@ class ProfileControllerTest extends AbstractControllerTest {
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetDishesNotModified() throws Exception {
+        String etag = mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void testGetDishesGzipped() throws Exception {
+        String json = mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26"))
+                .andReturn().getResponse().getContentAsString();
+        MvcResult result = mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("gzip", result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            assertEquals(json, new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *;q=0.5"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(json));
+    }
+
+    @Test
+    void testSearchDishes() throws Exception {
+        mockMvc.perform(get(REST_URL + "/restaurants/dishes/search")
+                .param("date", "2018-10-26")
+                .param("q", "dish")
+                .param("maxPrice", "1300")
+                .with(userHttpBasic(USER)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(result -> DishTestData.assertMatch(readListFromJsonMvcResult(result, Dish.class), DISH2, DISH4));
+    }
+
+    @Test
+    void testGetDishesRateLimited() throws Exception {
+        MvcResult result = null;
+        for (int i = 0; i < 100; i++) {
+            result = mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                    .param("date", "2018-10-26")
+                    .with(request -> {
+                        request.setRemoteAddr("10.0.0.1");
+                        return request;
+                    }))
+                    .andReturn();
+            if (result.getResponse().getStatus() != HttpStatus.OK.value()) {
+                break;
+            }
+        }
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), result.getResponse().getStatus());
+        assertNotNull(result.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+        mockMvc.perform(get(REST_URL + "/restaurants/dishes")
+                .param("date", "2018-10-26")
+                .with(userHttpBasic(USER)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testMakeVoteRateLimited() throws Exception {
+        // let the votes pass the admission filter whatever the time is
+        DateTimeFactory beforeLimit = mock(DateTimeFactory.class);
+        when(beforeLimit.getCurrentTime()).thenReturn(LocalTime.of(10, 0));
+        when(beforeLimit.getTimeLimit()).thenReturn(LocalTime.of(11, 0));
+        ReflectionTestUtils.setField(voteAdmissionFilter, "dateTimeFactory", beforeLimit);
+        try {
+            MvcResult result = null;
+            for (int i = 0; i < 100; i++) {
+                result = mockMvc.perform(post(REST_URL + "/restaurants/" + RESTAURANT1_ID + "/votes/async")
+                        .with(userHttpBasic(USER3)))
+                        .andReturn();
+                if (result.getResponse().getStatus() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                    break;
+                }
+            }
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), result.getResponse().getStatus());
+        } finally {
+            ReflectionTestUtils.setField(voteAdmissionFilter, "dateTimeFactory", dateTimeFactory);
+            voteBatchWriter.flush();
+        }
+    }
+
+    @Test
+    void testRateLimitClientsBounded() {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(20, 5, 2);
+        for (String address : new String[]{"10.0.0.1", "10.0.0.2"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setRemoteAddr(address);
+            assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.3");
+        assertThrows(TooManyRequestsException.class, () -> interceptor.preHandle(request, new MockHttpServletResponse(), null));
+    }
+}